@@ -2,12 +2,25 @@ package ascii_art;
 
 import image_char_matching.SubImgCharMatcher;
 
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
 /**
  * The AsciiArtAlgorithm class represents an algorithm for generating ASCII art from images.
  * It uses an ImageManager to handle image processing and a SubImgCharMatcher to match image brightness
  * with ASCII characters.
  */
 public class AsciiArtAlgorithm {
+    /**
+     * Default number of cells below which a band of rows is rendered sequentially.
+     */
+    public static final int DEFAULT_PARALLEL_THRESHOLD = 16384;
+
+    /**
+     * System property rendering the conversions of the shell, the batch converter and the server
+     * in parallel on the common fork/join pool when true, see {@link #configuredPool()}.
+     */
+    public static final String PARALLEL_PROPERTY = "ascii_art.parallelMatch";
 
     //brightness map field.
     private final double[][] brightnessMap;
@@ -15,6 +28,11 @@ public class AsciiArtAlgorithm {
     //sub images char matcher field.
     private final SubImgCharMatcher subImgCharMatcher;
 
+    //pool rendering row bands in parallel, or null for sequential rendering.
+    private final ForkJoinPool pool;
+
+    //number of cells below which a band of rows is rendered sequentially.
+    private int parallelThreshold = DEFAULT_PARALLEL_THRESHOLD;
 
     /**
      * Constructs an AsciiArtAlgorithm with the given brightness,subImgCharMatcher
@@ -23,8 +41,42 @@ public class AsciiArtAlgorithm {
      * @param subImgCharMatcher a SubImgCharMatcher object representing the sub-image character mapping
      */
     public AsciiArtAlgorithm(double[][] brightnessMap, SubImgCharMatcher subImgCharMatcher) {
+        this(brightnessMap, subImgCharMatcher, null);
+    }
+
+    /**
+     * Constructs an AsciiArtAlgorithm rendering bands of rows in parallel on the given pool.
+     * The output is identical to the sequential rendering.
+     *
+     * @param brightnessMap     a 2D array of doubles representing the brightness of the image
+     * @param subImgCharMatcher a SubImgCharMatcher object representing the sub-image character mapping
+     * @param pool              the fork/join pool to render on, or null to render sequentially
+     */
+    public AsciiArtAlgorithm(double[][] brightnessMap, SubImgCharMatcher subImgCharMatcher,
+                             ForkJoinPool pool) {
         this.brightnessMap = brightnessMap;
         this.subImgCharMatcher = subImgCharMatcher;
+        this.pool = pool;
+    }
+
+    /**
+     * Returns the pool conversions render on, as configured by the {@value #PARALLEL_PROPERTY}
+     * system property.
+     *
+     * @return the common fork/join pool if parallel rendering is on, otherwise null
+     */
+    public static ForkJoinPool configuredPool() {
+        return Boolean.getBoolean(PARALLEL_PROPERTY) ? ForkJoinPool.commonPool() : null;
+    }
+
+    /**
+     * Sets the number of cells below which a band of rows is not split further
+     * and is rendered sequentially.
+     *
+     * @param parallelThreshold the minimal number of cells worth splitting
+     */
+    public void setParallelThreshold(int parallelThreshold) {
+        this.parallelThreshold = parallelThreshold;
     }
 
     /**
@@ -37,13 +89,66 @@ public class AsciiArtAlgorithm {
         if (subImgCharMatcher.getCharset().isEmpty()) {
             throw new EmptyCharsetException();
         }
-        char[][] asciiArt = new char[brightnessMap.length][brightnessMap[0].length];
-        for (int i = 0; i < asciiArt.length; i++) {
+        PipelineStage.Timer timer = PipelineStage.MATCH.start();
+        try (timer) {
+            char[][] asciiArt = new char[brightnessMap.length][brightnessMap[0].length];
+            if (pool == null || (long) asciiArt.length * asciiArt[0].length <= parallelThreshold) {
+                renderRows(asciiArt, 0, asciiArt.length);
+            } else {
+                pool.invoke(new RowBandTask(asciiArt, 0, asciiArt.length));
+            }
+            return asciiArt;
+        }
+    }
+
+    /**
+     * Renders the rows of the given band.
+     *
+     * @param asciiArt the ASCII art being rendered
+     * @param fromRow  the first row of the band
+     * @param toRow    the row after the last row of the band
+     */
+    private void renderRows(char[][] asciiArt, int fromRow, int toRow) {
+        for (int i = fromRow; i < toRow; i++) {
             for (int j = 0; j < asciiArt[i].length; j++) {
                 asciiArt[i][j] = subImgCharMatcher.getCharByImageBrightness(brightnessMap[i][j]);
             }
         }
-        return asciiArt;
+    }
+
+    /**
+     * A fork/join task rendering a band of rows, halving it while it is above the parallel threshold.
+     * Every cell is written by exactly one task, so the result does not depend on the scheduling.
+     */
+    private class RowBandTask extends RecursiveAction {
+        //version of the serialized form, inherited from ForkJoinTask.
+        private static final long serialVersionUID = 1L;
+
+        //the ASCII art being rendered.
+        private final char[][] asciiArt;
+
+        //the first row of the band.
+        private final int fromRow;
+
+        //the row after the last row of the band.
+        private final int toRow;
+
+        RowBandTask(char[][] asciiArt, int fromRow, int toRow) {
+            this.asciiArt = asciiArt;
+            this.fromRow = fromRow;
+            this.toRow = toRow;
+        }
+
+        @Override
+        protected void compute() {
+            int rows = toRow - fromRow;
+            if (rows < 2 || (long) rows * asciiArt[fromRow].length <= parallelThreshold) {
+                renderRows(asciiArt, fromRow, toRow);
+                return;
+            }
+            int middle = (fromRow + toRow) >>> 1;
+            invokeAll(new RowBandTask(asciiArt, fromRow, middle), new RowBandTask(asciiArt, middle, toRow));
+        }
     }
 
 }
@@ -10,4 +10,12 @@ public interface AsciiOutput {
      * Output the specified 2D array of chars
      */
     void out(char[][] chars);
+
+    /**
+     * Output the specified 2D array of chars, each in the packed RGB color at the same position
+     * of the specified colors array. Outputs without colors ignore the colors.
+     */
+    default void out(char[][] chars, int[][] colors) {
+        out(chars);
+    }
 }
@@ -0,0 +1,394 @@
+package ascii_art;
+
+import ascii_output.HtmlAsciiOutput;
+import image.BrightnessMapCache;
+import image.ImageManager;
+import image_char_matching.SubImgCharMatcher;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The BatchConverter class converts every image of a directory (or matching a glob) to ASCII art
+ * without user interaction, at several resolutions, writing one HTML or text file per image and
+ * resolution.
+ * Images are converted concurrently: each file is handled by its own virtual thread doing the file
+ * writes, while decoding and conversion run on a pool bounded by the number of cores. Without virtual
+ * threads, files are handled by a pool of a few platform threads per core instead, the other files
+ * waiting their turn.
+ * All files share one SubImgCharMatcher, whose lookups are safe for concurrent use, and one
+ * brightness map cache.
+ */
+public class BatchConverter {
+    //usage message.
+    private static final String USAGE = "Usage: batch <directory|glob> <charset|all> <res[,res...]> " +
+            "[output directory] [html|html.gz|text]";
+
+    /**
+     * Output format writing an HTML file per image and resolution.
+     */
+    public static final String HTML_FORMAT = "html";
+
+    /**
+     * Output format writing a gzip compressed HTML file per image and resolution.
+     */
+    public static final String GZIP_HTML_FORMAT = "html.gz";
+
+    /**
+     * Output format writing a text file per image and resolution, in the console layout.
+     */
+    public static final String TEXT_FORMAT = "text";
+
+    //charset argument adding all printable ASCII characters.
+    private static final String ALL_CHARSET = "all";
+
+    //separator of the resolutions argument.
+    private static final String RESOLUTION_SEPARATOR = ",";
+
+    //prefix of a glob path matcher.
+    private static final String GLOB_SYNTAX = "glob:";
+
+    //default output directory.
+    private static final String DEFAULT_OUTPUT_DIRECTORY = ".";
+
+    //html font.
+    private static final String HTML_FONT = "Courier New";
+
+    //output file name format: image file name, resolution, output format extension.
+    private static final String OUTPUT_FILE_FORMAT = "%s_%d.%s";
+
+    //extension of the text output files.
+    private static final String TEXT_EXTENSION = "txt";
+
+    //per file report format.
+    private static final String FILE_REPORT_FORMAT = "%s: %d ms%n";
+
+    //per file error format.
+    private static final String FILE_ERROR_FORMAT = "%s: failed (%s)%n";
+
+    //skipped resolution format.
+    private static final String RESOLUTION_SKIPPED_FORMAT = "%s: resolution %d exceeds boundaries, skipped%n";
+
+    //summary format.
+    private static final String SUMMARY_FORMAT = "Converted %d of %d images in %d ms (%.1f images/s)%n";
+
+    //html throughput summary format.
+    private static final String HTML_SUMMARY_FORMAT = "Wrote %d bytes of html at %.0f bytes/s%n";
+
+    //minimum ascii value.
+    private static final char MINIMUM_ASCII_VALUE = 32;
+
+    //maximum ascii value.
+    private static final char MAXIMUM_ASCII_VALUE = 127;
+
+    //nanoseconds in a millisecond.
+    private static final long NANOS_IN_MILLI = 1_000_000L;
+
+    //milliseconds in a second.
+    private static final double MILLIS_IN_SECOND = 1000.0;
+
+    //nanoseconds in a second.
+    private static final double NANOS_IN_SECOND = 1e9;
+
+    //platform threads handling files per core, when virtual threads are unavailable.
+    private static final int FILE_THREADS_PER_CORE = 2;
+
+    //the shared char matcher.
+    private final SubImgCharMatcher subImgCharMatcher;
+
+    //the resolutions to convert at.
+    private final int[] resolutions;
+
+    //the output directory.
+    private final Path outputDirectory;
+
+    //the output format.
+    private final String format;
+
+    //the brightness map cache shared by all conversions.
+    private final BrightnessMapCache brightnessMapCache = new BrightnessMapCache();
+
+    //bytes of html written by the current conversion, before compression.
+    private final LongAdder htmlBytes = new LongAdder();
+
+    //time spent writing html files by the current conversion, in nanoseconds.
+    private final LongAdder htmlNanos = new LongAdder();
+
+    /**
+     * Constructs a BatchConverter writing HTML files.
+     *
+     * @param subImgCharMatcher the char matcher shared by all conversions
+     * @param resolutions       the resolutions to convert every image at
+     * @param outputDirectory   the directory to write the HTML files to
+     */
+    public BatchConverter(SubImgCharMatcher subImgCharMatcher, int[] resolutions, Path outputDirectory) {
+        this(subImgCharMatcher, resolutions, outputDirectory, HTML_FORMAT);
+    }
+
+    /**
+     * Constructs a BatchConverter writing files of the given format.
+     *
+     * @param subImgCharMatcher the char matcher shared by all conversions
+     * @param resolutions       the resolutions to convert every image at
+     * @param outputDirectory   the directory to write the files to
+     * @param format            the output format, {@value #HTML_FORMAT}, {@value #GZIP_HTML_FORMAT}
+     *                          or {@value #TEXT_FORMAT}
+     * @throws IllegalArgumentException if the format is unknown
+     */
+    public BatchConverter(SubImgCharMatcher subImgCharMatcher, int[] resolutions, Path outputDirectory,
+                          String format) {
+        if (!isFormat(format)) {
+            throw new IllegalArgumentException("Unknown output format: " + format);
+        }
+        this.subImgCharMatcher = subImgCharMatcher;
+        this.resolutions = resolutions;
+        this.outputDirectory = outputDirectory;
+        this.format = format;
+    }
+
+    /**
+     * Runs a batch conversion from the command line.
+     *
+     * @param args the input directory or glob, the charset, the resolutions, an optional output directory
+     *             and an optional output format
+     */
+    public static void main(String[] args) {
+        if (args.length < 3 || args.length > 5) {
+            System.out.println(USAGE);
+            return;
+        }
+        String format = args.length == 5 ? args[4] : HTML_FORMAT;
+        if (!isFormat(format)) {
+            System.out.println(USAGE);
+            return;
+        }
+        try {
+            SubImgCharMatcher subImgCharMatcher = new SubImgCharMatcher(parseCharset(args[1]));
+            String[] resolutionArgs = args[2].split(RESOLUTION_SEPARATOR);
+            int[] resolutions = new int[resolutionArgs.length];
+            for (int i = 0; i < resolutions.length; i++) {
+                resolutions[i] = Integer.parseInt(resolutionArgs[i].trim());
+            }
+            Path outputDirectory = Paths.get(args.length >= 4 ? args[3] : DEFAULT_OUTPUT_DIRECTORY);
+            Files.createDirectories(outputDirectory);
+            new BatchConverter(subImgCharMatcher, resolutions, outputDirectory, format)
+                    .convert(listImages(args[0]));
+        } catch (NumberFormatException | IOException e) {
+            System.out.println(USAGE);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Checks whether a format is one of the output formats.
+     *
+     * @param format the format
+     * @return whether the format is known
+     */
+    private static boolean isFormat(String format) {
+        return format.equals(HTML_FORMAT) || format.equals(GZIP_HTML_FORMAT) || format.equals(TEXT_FORMAT);
+    }
+
+    /**
+     * Converts the given images concurrently and prints per file timings and the overall throughput,
+     * including the throughput of the html writes.
+     *
+     * @param images the image files to convert
+     * @return the number of images converted successfully
+     * @throws InterruptedException if interrupted while waiting for the conversions
+     */
+    public int convert(List<Path> images) throws InterruptedException {
+        long start = System.nanoTime();
+        int converted = 0;
+        htmlBytes.reset();
+        htmlNanos.reset();
+        int cores = Runtime.getRuntime().availableProcessors();
+        ExecutorService cpuPool = Executors.newFixedThreadPool(cores);
+        ExecutorService ioExecutor = VirtualThreads.newThreadPerTaskExecutor(cores * FILE_THREADS_PER_CORE);
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (Path image : images) {
+                results.add(ioExecutor.submit(() -> convertFile(image, cpuPool)));
+            }
+            for (int i = 0; i < results.size(); i++) {
+                try {
+                    if (results.get(i).get()) {
+                        converted++;
+                    }
+                } catch (ExecutionException e) {
+                    System.out.printf(FILE_ERROR_FORMAT, images.get(i), e.getCause());
+                }
+            }
+        } finally {
+            ioExecutor.shutdown();
+            cpuPool.shutdown();
+        }
+        long elapsedMillis = (System.nanoTime() - start) / NANOS_IN_MILLI;
+        System.out.printf(SUMMARY_FORMAT, converted, images.size(), elapsedMillis,
+                converted * MILLIS_IN_SECOND / Math.max(1, elapsedMillis));
+        if (!format.equals(TEXT_FORMAT)) {
+            System.out.printf(HTML_SUMMARY_FORMAT, htmlBytes.sum(),
+                    htmlBytes.sum() * NANOS_IN_SECOND / Math.max(1, htmlNanos.sum()));
+        }
+        return converted;
+    }
+
+    /**
+     * Converts one image at every resolution: the conversion runs on the CPU pool, the output files
+     * are written from the calling thread. Output files are named after the full file name of the
+     * image, so images differing only by their extension do not overwrite each other.
+     *
+     * @param image   the image file
+     * @param cpuPool the pool bounding the CPU work
+     * @return whether the image was converted and all its output files written
+     * @throws InterruptedException if interrupted while waiting for the CPU pool
+     */
+    private boolean convertFile(Path image, ExecutorService cpuPool) throws InterruptedException {
+        long start = System.nanoTime();
+        List<char[][]> asciiArts;
+        try {
+            asciiArts = cpuPool.submit(() -> render(image)).get();
+        } catch (ExecutionException e) {
+            System.out.printf(FILE_ERROR_FORMAT, image, e.getCause());
+            return false;
+        }
+        String name = image.getFileName().toString();
+        String extension = format.equals(TEXT_FORMAT) ? TEXT_EXTENSION : format;
+        boolean written = true;
+        for (int i = 0; i < resolutions.length; i++) {
+            if (asciiArts.get(i) == null) {
+                System.out.printf(RESOLUTION_SKIPPED_FORMAT, image, resolutions[i]);
+                continue;
+            }
+            Path file = outputDirectory.resolve(
+                    String.format(OUTPUT_FILE_FORMAT, name, resolutions[i], extension));
+            try {
+                if (format.equals(TEXT_FORMAT)) {
+                    writeText(file, asciiArts.get(i));
+                } else {
+                    HtmlAsciiOutput output = new HtmlAsciiOutput(file.toString(), HTML_FONT,
+                            format.equals(GZIP_HTML_FORMAT));
+                    output.write(asciiArts.get(i), null);
+                    htmlBytes.add(output.getLastBytesWritten());
+                    htmlNanos.add(output.getLastWriteNanos());
+                }
+            } catch (IOException e) {
+                System.out.printf(FILE_ERROR_FORMAT, file, e);
+                written = false;
+            }
+        }
+        System.out.printf(FILE_REPORT_FORMAT, image, (System.nanoTime() - start) / NANOS_IN_MILLI);
+        return written;
+    }
+
+    /**
+     * Decodes an image and renders it at every resolution. Every resolution is checked against the
+     * image before anything is computed at it, so an invalid one is skipped without failing the image.
+     *
+     * @param image the image file
+     * @return the ASCII art per resolution, null for resolutions exceeding the image boundaries
+     * @throws IOException           if the image cannot be read
+     * @throws EmptyCharsetException if the charset is empty
+     */
+    private List<char[][]> render(Path image) throws IOException, EmptyCharsetException {
+        ImageManager imageManager = null;
+        List<char[][]> asciiArts = new ArrayList<>();
+        for (int resolution : resolutions) {
+            try {
+                if (imageManager == null) {
+                    imageManager = ImageManager.open(image.toString(), resolution, brightnessMapCache);
+                } else {
+                    imageManager.setResolution(resolution);
+                }
+                asciiArts.add(new AsciiArtAlgorithm(imageManager.getBrightnessMap(), subImgCharMatcher,
+                        AsciiArtAlgorithm.configuredPool()).run());
+            } catch (ResolutionExceedingBoundariesException e) {
+                asciiArts.add(null);
+            }
+        }
+        return asciiArts;
+    }
+
+    /**
+     * Lists the regular files of a directory, or the regular files matching a glob
+     * (whose last path element holds the pattern).
+     *
+     * @param input the directory or glob
+     * @return the matching files, sorted by path
+     * @throws IOException if the directory cannot be listed
+     */
+    static List<Path> listImages(String input) throws IOException {
+        Path path = Paths.get(input);
+        Path directory;
+        PathMatcher matcher;
+        if (Files.isDirectory(path)) {
+            directory = path;
+            matcher = p -> true;
+        } else {
+            directory = path.getParent() == null ? Paths.get(DEFAULT_OUTPUT_DIRECTORY) : path.getParent();
+            matcher = FileSystems.getDefault().getPathMatcher(GLOB_SYNTAX + path.getFileName());
+        }
+        List<Path> images = new ArrayList<>();
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+            for (Path entry : entries) {
+                if (Files.isRegularFile(entry) && matcher.matches(entry.getFileName())) {
+                    images.add(entry);
+                }
+            }
+        }
+        images.sort(null);
+        return images;
+    }
+
+    /**
+     * Parses the charset argument: either "all" for every printable ASCII character,
+     * or the literal characters of the charset.
+     *
+     * @param charset the charset argument
+     * @return the characters of the charset
+     */
+    private static char[] parseCharset(String charset) {
+        if (!charset.equals(ALL_CHARSET)) {
+            return charset.toCharArray();
+        }
+        char[] chars = new char[MAXIMUM_ASCII_VALUE - MINIMUM_ASCII_VALUE];
+        for (char c = MINIMUM_ASCII_VALUE; c < MAXIMUM_ASCII_VALUE; c++) {
+            chars[c - MINIMUM_ASCII_VALUE] = c;
+        }
+        return chars;
+    }
+
+    /**
+     * Writes ASCII art to a text file in the console layout: every character followed by a space,
+     * and a line separator after every row.
+     *
+     * @param file  the text file
+     * @param chars the ASCII art
+     * @throws IOException if the file cannot be written
+     */
+    private static void writeText(Path file, char[][] chars) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(file)) {
+            for (char[] row : chars) {
+                for (char c : row) {
+                    writer.write(c);
+                    writer.write(' ');
+                }
+                writer.newLine();
+            }
+        }
+    }
+}
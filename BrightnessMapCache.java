@@ -0,0 +1,286 @@
+package image;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A memory-bounded LRU cache of brightness maps, keyed by the content hash of the decoded image,
+ * the resolution and the decode subsampling factor. It also remembers which content hash a file had when it was last decoded,
+ * so revisiting an unchanged file skips decoding as well as the brightness computation.
+ * Hits, misses and evictions are counted for monitoring.
+ */
+public class BrightnessMapCache {
+    // default memory budget of the cached brightness maps, in bytes.
+    public static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+
+    // maximal number of remembered file fingerprints.
+    private static final int MAX_FILE_ENTRIES = 256;
+
+    // approximate per-row overhead of a double[] row, in bytes.
+    private static final int ROW_OVERHEAD_BYTES = 16;
+
+    // initial capacity of the LRU maps.
+    private static final int INITIAL_CAPACITY = 16;
+
+    // load factor of the LRU maps.
+    private static final float LOAD_FACTOR = 0.75f;
+
+    // the memory budget, in bytes.
+    private final long maxBytes;
+
+    // brightness maps in access order, least recently used first.
+    private final LinkedHashMap<Key, double[][]> maps;
+
+    // decoded image descriptions by file fingerprint, least recently used first.
+    private final LinkedHashMap<String, ImageInfo> files;
+
+    // current weight of the cached maps, in bytes.
+    private long currentBytes;
+
+    // statistics counters.
+    private long hits, misses, evictions;
+
+    /**
+     * Constructs a cache with the default memory budget.
+     */
+    public BrightnessMapCache() {
+        this(DEFAULT_MAX_BYTES);
+    }
+
+    /**
+     * Constructs a cache bounded by the given memory budget.
+     *
+     * @param maxBytes the maximal total size of the cached brightness maps, in bytes
+     */
+    public BrightnessMapCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+        this.maps = new LinkedHashMap<>(INITIAL_CAPACITY, LOAD_FACTOR, true);
+        this.files = new LinkedHashMap<>(INITIAL_CAPACITY, LOAD_FACTOR, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, ImageInfo> eldest) {
+                return size() > MAX_FILE_ENTRIES;
+            }
+        };
+    }
+
+    /**
+     * Retrieves the cached brightness map of the given image content at the given resolution.
+     *
+     * @param contentHash the content hash of the decoded image
+     * @param resolution  the resolution of the map
+     * @return the cached map, or null if it is not cached
+     */
+    public double[][] get(long contentHash, int resolution) {
+        return get(contentHash, resolution, 1);
+    }
+
+    /**
+     * Retrieves the cached brightness map of the given image content at the given resolution,
+     * computed from a decode subsampled by the given factor.
+     *
+     * @param contentHash the content hash of the decoded image
+     * @param resolution  the resolution of the map
+     * @param subsampling the decode subsampling factor, 1 for a full-fidelity map
+     * @return the cached map, or null if it is not cached
+     */
+    public synchronized double[][] get(long contentHash, int resolution, int subsampling) {
+        double[][] map = maps.get(new Key(contentHash, resolution, subsampling));
+        if (map == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return map;
+    }
+
+    /**
+     * Caches a brightness map, evicting the least recently used maps while over the memory budget.
+     * Maps larger than the whole budget are not cached.
+     *
+     * @param contentHash the content hash of the decoded image
+     * @param resolution  the resolution of the map
+     * @param map         the brightness map
+     */
+    public void put(long contentHash, int resolution, double[][] map) {
+        put(contentHash, resolution, 1, map);
+    }
+
+    /**
+     * Caches a brightness map computed from a decode subsampled by the given factor, evicting the
+     * least recently used maps while over the memory budget. Maps larger than the whole budget
+     * are not cached.
+     *
+     * @param contentHash the content hash of the decoded image
+     * @param resolution  the resolution of the map
+     * @param subsampling the decode subsampling factor, 1 for a full-fidelity map
+     * @param map         the brightness map
+     */
+    public synchronized void put(long contentHash, int resolution, int subsampling, double[][] map) {
+        long weight = weigh(map);
+        if (weight > maxBytes) {
+            return;
+        }
+        double[][] previous = maps.put(new Key(contentHash, resolution, subsampling), map);
+        if (previous != null) {
+            currentBytes -= weigh(previous);
+        }
+        currentBytes += weight;
+        Iterator<Map.Entry<Key, double[][]>> iterator = maps.entrySet().iterator();
+        while (currentBytes > maxBytes && iterator.hasNext()) {
+            Map.Entry<Key, double[][]> eldest = iterator.next();
+            currentBytes -= weigh(eldest.getValue());
+            iterator.remove();
+            evictions++;
+        }
+    }
+
+    /**
+     * Retrieves the description of a file decoded earlier, if the file did not change since.
+     *
+     * @param file the image file
+     * @return the image description, or null if the file is unknown or changed
+     */
+    synchronized ImageInfo getImageInfo(File file) {
+        return files.get(fingerprint(file));
+    }
+
+    /**
+     * Remembers the description of a decoded file.
+     *
+     * @param file the image file
+     * @param info the description of its decoded content
+     */
+    synchronized void putImageInfo(File file, ImageInfo info) {
+        files.put(fingerprint(file), info);
+    }
+
+    /**
+     * Forgets the description of a file, for files that will not be loaded again.
+     *
+     * @param file the image file
+     */
+    public synchronized void forgetFile(File file) {
+        files.remove(fingerprint(file));
+    }
+
+    /**
+     * Returns the number of lookups answered from the cache.
+     *
+     * @return the hit count
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * Returns the number of lookups not answered from the cache.
+     *
+     * @return the miss count
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Returns the number of maps evicted to stay within the memory budget.
+     *
+     * @return the eviction count
+     */
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * Returns the current total size of the cached maps.
+     *
+     * @return the size in bytes
+     */
+    public synchronized long getCurrentBytes() {
+        return currentBytes;
+    }
+
+    /**
+     * Approximates the memory footprint of a brightness map.
+     *
+     * @param map the brightness map
+     * @return the approximate size in bytes
+     */
+    private static long weigh(double[][] map) {
+        long bytes = 0;
+        for (double[] row : map) {
+            bytes += (long) row.length * Double.BYTES + ROW_OVERHEAD_BYTES;
+        }
+        return bytes;
+    }
+
+    /**
+     * Builds a fingerprint identifying the current version of a file.
+     *
+     * @param file the file
+     * @return the fingerprint of the file
+     */
+    static String fingerprint(File file) {
+        return file.getAbsolutePath() + '|' + file.length() + '|' + file.lastModified();
+    }
+
+    /**
+     * Cache key of a brightness map.
+     */
+    private static final class Key {
+        // content hash of the decoded image.
+        private final long contentHash;
+
+        // resolution of the map.
+        private final int resolution;
+
+        // decode subsampling factor of the map.
+        private final int subsampling;
+
+        Key(long contentHash, int resolution, int subsampling) {
+            this.contentHash = contentHash;
+            this.resolution = resolution;
+            this.subsampling = subsampling;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return contentHash == other.contentHash && resolution == other.resolution &&
+                    subsampling == other.subsampling;
+        }
+
+        @Override
+        public int hashCode() {
+            return (Long.hashCode(contentHash) * 31 + resolution) * 31 + subsampling;
+        }
+    }
+
+    /**
+     * Description of a decoded image: its content hash and dimensions.
+     * The content hash is the one of the pixels decoded when the file was first loaded, or the one
+     * of the bytes of the file when it was first loaded subsampled; either identifies the content
+     * wherever the file is stored, while the fingerprint it is filed under only validates that
+     * the file did not change.
+     */
+    static final class ImageInfo {
+        // content hash of the decoded image.
+        final long contentHash;
+
+        // width of the image.
+        final int width;
+
+        // height of the image.
+        final int height;
+
+        ImageInfo(long contentHash, int width, int height) {
+            this.contentHash = contentHash;
+            this.width = width;
+            this.height = height;
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package image;
+
+/**
+ * A mip-style pyramid of the per-tile luma sums of an image padded to power-of-two dimensions.
+ * Halving the resolution merges every 2x2 block of tiles into one, so each level is the exact
+ * 2x2 sum of the next finer one, and the brightness map of any held resolution is a lookup.
+ * Sums are fixed-point integers (see {@link ImageManager#luma(int)}), so maps derived from
+ * coarser levels are identical to maps computed from the pixels directly.
+ * The pyramid holds the levels from its finest resolution down to the coarsest valid one;
+ * the finest level is chosen as the finest whose pyramid fits in a memory budget, so the
+ * finest levels are the ones dropped first.
+ */
+class BrightnessPyramid {
+    // approximate per-row overhead of a long[] row, in bytes.
+    private static final int ROW_OVERHEAD_BYTES = 16;
+
+    // levels of luma sums, [level][tile rows][tile columns]; level k has the finest resolution >> k.
+    private final long[][][] levels;
+
+    // resolution of the finest level.
+    private final int finestResolution;
+
+    /**
+     * Builds a pyramid from its finest level, down to the coarsest resolution.
+     *
+     * @param finest             the luma sums of the finest level, [tile rows][tile columns]
+     * @param coarsestResolution the coarsest resolution to hold, finest resolution divided by a power of two
+     */
+    BrightnessPyramid(long[][] finest, int coarsestResolution) {
+        this.finestResolution = finest[0].length;
+        int levelCount = Integer.numberOfTrailingZeros(finestResolution / coarsestResolution) + 1;
+        this.levels = new long[levelCount][][];
+        levels[0] = finest;
+        for (int k = 1; k < levelCount; k++) {
+            levels[k] = halve(levels[k - 1]);
+        }
+    }
+
+    /**
+     * Chooses the finest resolution whose pyramid, down to the coarsest resolution, fits in a
+     * memory budget.
+     *
+     * @param maxResolution      the finest valid resolution, a power of two
+     * @param maxRows            the number of tile rows at the finest valid resolution
+     * @param coarsestResolution the coarsest resolution to hold
+     * @param maxBytes           the memory budget, in bytes
+     * @return the finest resolution to build the pyramid from, or 0 if even the coarsest level does not fit
+     */
+    static int finestResolution(int maxResolution, int maxRows, int coarsestResolution, long maxBytes) {
+        int resolution = maxResolution;
+        int rows = maxRows;
+        while (resolution >= coarsestResolution) {
+            if (weigh(rows, resolution, coarsestResolution) <= maxBytes) {
+                return resolution;
+            }
+            resolution /= 2;
+            rows /= 2;
+        }
+        return 0;
+    }
+
+    /**
+     * Tells whether the pyramid holds the given resolution.
+     *
+     * @param resolution the resolution
+     * @return whether the luma sums of the resolution are held
+     */
+    boolean holds(int resolution) {
+        if (resolution <= 0 || resolution > finestResolution || finestResolution % resolution != 0) {
+            return false;
+        }
+        int ratio = finestResolution / resolution;
+        return Integer.bitCount(ratio) == 1 && Integer.numberOfTrailingZeros(ratio) < levels.length;
+    }
+
+    /**
+     * Returns the finest resolution held.
+     *
+     * @return the resolution of the finest level
+     */
+    int getFinestResolution() {
+        return finestResolution;
+    }
+
+    /**
+     * Returns the luma sums of a held resolution, not to be modified.
+     *
+     * @param resolution the resolution, see {@link #holds(int)}
+     * @return the luma sums, [tile rows][tile columns]
+     */
+    long[][] getLumaSums(int resolution) {
+        return levels[Integer.numberOfTrailingZeros(finestResolution / resolution)];
+    }
+
+    /**
+     * Sums every 2x2 block of tiles of a level.
+     *
+     * @param level the luma sums of the level
+     * @return the luma sums of the next coarser level
+     */
+    private static long[][] halve(long[][] level) {
+        long[][] coarser = new long[level.length / 2][level[0].length / 2];
+        for (int i = 0; i < coarser.length; i++) {
+            long[] top = level[2 * i];
+            long[] bottom = level[2 * i + 1];
+            for (int j = 0; j < coarser[i].length; j++) {
+                coarser[i][j] = top[2 * j] + top[2 * j + 1] + bottom[2 * j] + bottom[2 * j + 1];
+            }
+        }
+        return coarser;
+    }
+
+    /**
+     * Estimates the memory footprint of a pyramid.
+     *
+     * @param rows               the number of tile rows of the finest level
+     * @param resolution         the resolution of the finest level
+     * @param coarsestResolution the coarsest resolution held
+     * @return the approximate size in bytes
+     */
+    private static long weigh(int rows, int resolution, int coarsestResolution) {
+        long bytes = 0;
+        for (; resolution >= coarsestResolution && rows > 0; resolution /= 2, rows /= 2) {
+            bytes += (long) rows * (ROW_OVERHEAD_BYTES + (long) resolution * Long.BYTES);
+        }
+        return bytes;
+    }
+}
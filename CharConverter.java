@@ -1,7 +1,13 @@
 package image_char_matching;
 
+import ascii_art.PipelineStage;
+
 import java.awt.*;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 
 /**
  * Inspired by, and partly copied from
@@ -10,6 +16,11 @@ import java.awt.image.BufferedImage;
  * https://dzone.com/articles/ascii-art-generator-java
  * Adaptations made by Dan Nirel and again by Rachel Behar.
  * The class converts characters to a binary "image" (2D array of booleans).
+ * A converter renders in a single font and pixel resolution. It creates its font once, and every
+ * render borrows a scratch image and graphics, read straight from the raster, from a small pool:
+ * a converter is safe to use from multiple threads and whole charsets can be rendered in parallel,
+ * while only a few idle scratch graphics are kept, whatever the threads
+ * that rendered.
  */
 public class CharConverter {
     //X offset factor.
@@ -18,49 +29,218 @@ public class CharConverter {
     //Y offset factor.
     private static final double Y_OFFSET_FACTOR = 0.75;
 
-    //font name.
-    private static final String FONT_NAME = "Courier New";
+    /**
+     * default font name.
+     */
+    public static final String DEFAULT_FONT_NAME = "Courier New";
 
     /**
      * default pixel resolution.
      */
     public static final int DEFAULT_PIXEL_RESOLUTION = 16;
 
+    //maximal number of idle scratch images kept for reuse, extra ones are disposed once used.
+    private static final int MAX_IDLE_SCRATCHES = Runtime.getRuntime().availableProcessors();
+
+    //converter of the default font and pixel resolution.
+    private static final CharConverter DEFAULT_CONVERTER =
+            new CharConverter(DEFAULT_FONT_NAME, DEFAULT_PIXEL_RESOLUTION);
+
+    //the font name.
+    private final String fontName;
+
+    //number of pixels per row/column of a rendered character.
+    private final int pixelResolution;
+
+    //the font, shared by every thread.
+    private final Font font;
+
+    //x offset of the rendered characters.
+    private final int xOffset;
+
+    //y offset of the rendered characters.
+    private final int yOffset;
+
+    //idle scratch images, borrowed by one render at a time.
+    private final BlockingQueue<Scratch> idleScratches = new ArrayBlockingQueue<>(MAX_IDLE_SCRATCHES);
+
+    /**
+     * Constructs a converter rendering characters in the given font, to squares of the given size.
+     *
+     * @param fontName        the name of the font to use for rendering
+     * @param pixelResolution the number of pixels per row/column of a rendered character
+     * @throws IllegalArgumentException if the pixel resolution is not positive
+     */
+    public CharConverter(String fontName, int pixelResolution) {
+        if (pixelResolution < 1) {
+            throw new IllegalArgumentException("Pixel resolution must be positive: " + pixelResolution);
+        }
+        this.fontName = fontName;
+        this.pixelResolution = pixelResolution;
+        this.font = new Font(fontName, Font.PLAIN, pixelResolution);
+        this.xOffset = (int) Math.round(pixelResolution * X_OFFSET_FACTOR);
+        this.yOffset = (int) Math.round(pixelResolution * Y_OFFSET_FACTOR);
+    }
+
+    /**
+     * Returns the converter of the default font and pixel resolution.
+     *
+     * @return the shared default converter
+     */
+    public static CharConverter getDefault() {
+        return DEFAULT_CONVERTER;
+    }
+
     /**
      * Renders a given character, according to how it looks in the font specified in the
      * constructor, to a square black&white image (2D array of booleans),
      * whose dimension in pixels is specified.
      */
     public static boolean[][] convertToBoolArray(char c) {
-        BufferedImage img = getBufferedImage(c, FONT_NAME, DEFAULT_PIXEL_RESOLUTION);
-        boolean[][] matrix = new boolean[DEFAULT_PIXEL_RESOLUTION][DEFAULT_PIXEL_RESOLUTION];
-        for (int y = 0; y < DEFAULT_PIXEL_RESOLUTION; y++) {
-            for (int x = 0; x < DEFAULT_PIXEL_RESOLUTION; x++) {
-                matrix[y][x] = img.getRGB(x, y) == 0; //is the color black
+        return DEFAULT_CONVERTER.convert(c);
+    }
+
+    /**
+     * Returns the name of the font characters are rendered in.
+     *
+     * @return the font name
+     */
+    public String getFontName() {
+        return fontName;
+    }
+
+    /**
+     * Returns the number of pixels per row/column of a rendered character.
+     *
+     * @return the pixel resolution
+     */
+    public int getPixelResolution() {
+        return pixelResolution;
+    }
+
+    /**
+     * Renders a character to a square black&white image (2D array of booleans).
+     *
+     * @param c the character to render
+     * @return the rendered character, true for the pixels left blank
+     */
+    public boolean[][] convert(char c) {
+        PipelineStage.Timer timer = PipelineStage.GLYPH.start();
+        try (timer) {
+            Scratch scratch = acquireScratch();
+            try {
+                int[] pixels = scratch.render(c);
+                boolean[][] matrix = new boolean[pixelResolution][pixelResolution];
+                for (int y = 0; y < pixelResolution; y++) {
+                    for (int x = 0; x < pixelResolution; x++) {
+                        matrix[y][x] = pixels[y * pixelResolution + x] == 0; //is the color black
+                    }
+                }
+                return matrix;
+            } finally {
+                releaseScratch(scratch);
             }
         }
-        return matrix;
     }
 
     /**
-     * Generates a buffered image of the specified character rendered
-     * in a specified font and pixel resolution.
+     * Renders every character of a charset in parallel on the common pool.
+     *
+     * @param chars the characters to render
+     * @return the rendered characters, in the order of chars
+     */
+    public boolean[][][] convertAll(char[] chars) {
+        boolean[][][] matrices = new boolean[chars.length][][];
+        Arrays.parallelSetAll(matrices, i -> convert(chars[i]));
+        return matrices;
+    }
+
+    /**
+     * Counts the pixels of a rendered character left blank, the true pixels of {@link #convert(char)},
+     * without building its boolean image.
+     *
+     * @param c the character to render
+     * @return the number of blank pixels
+     */
+    public int countWhitePixels(char c) {
+        PipelineStage.Timer timer = PipelineStage.GLYPH.start();
+        try (timer) {
+            Scratch scratch = acquireScratch();
+            try {
+                int count = 0;
+                for (int pixel : scratch.render(c)) {
+                    if (pixel == 0) {
+                        count++;
+                    }
+                }
+                return count;
+            } finally {
+                releaseScratch(scratch);
+            }
+        }
+    }
+
+    /**
+     * Counts the blank pixels of every character of a charset, rendering them in parallel on the
+     * common pool.
+     *
+     * @param chars the characters to render
+     * @return the number of blank pixels of every character, in the order of chars
+     */
+    public int[] countWhitePixels(char[] chars) {
+        int[] counts = new int[chars.length];
+        Arrays.parallelSetAll(counts, i -> countWhitePixels(chars[i]));
+        return counts;
+    }
+
+    /**
+     * Borrows an idle scratch image, or creates one if none is idle.
      *
-     * @param c            the character to render
-     * @param fontName     the name of the font to use for rendering
-     * @param pixelsPerRow the number of pixels per row/column in the resulting image
-     * @return a buffered image of the rendered character
+     * @return the scratch image, to be released by the caller
      */
-    private static BufferedImage getBufferedImage(char c, String fontName, int pixelsPerRow) {
-        String charStr = Character.toString(c);
-        Font font = new Font(fontName, Font.PLAIN, pixelsPerRow);
-        BufferedImage img = new BufferedImage(pixelsPerRow, pixelsPerRow, BufferedImage.TYPE_INT_ARGB);
-        Graphics g = img.getGraphics();
-        g.setFont(font);
-        int xOffset = (int) Math.round(pixelsPerRow * X_OFFSET_FACTOR);
-        int yOffset = (int) Math.round(pixelsPerRow * Y_OFFSET_FACTOR);
-        g.drawString(charStr, xOffset, yOffset);
-        return img;
+    private Scratch acquireScratch() {
+        Scratch scratch = idleScratches.poll();
+        return scratch == null ? new Scratch() : scratch;
+    }
+
+    /**
+     * Returns a scratch image to the idle ones, disposing of its graphics if enough are idle.
+     *
+     * @param scratch the scratch image
+     */
+    private void releaseScratch(Scratch scratch) {
+        if (!idleScratches.offer(scratch)) {
+            scratch.graphics.dispose();
+        }
     }
 
+    /**
+     * A transparent scratch image, with its graphics set to the font of the converter.
+     */
+    private class Scratch {
+        //the graphics drawing into the image, kept while the scratch is idle.
+        private final Graphics2D graphics;
+
+        //the ARGB raster of the image.
+        private final int[] pixels;
+
+        Scratch() {
+            BufferedImage img = new BufferedImage(pixelResolution, pixelResolution, BufferedImage.TYPE_INT_ARGB);
+            graphics = img.createGraphics();
+            graphics.setFont(font);
+            pixels = ((DataBufferInt) img.getRaster().getDataBuffer()).getData();
+        }
+
+        /**
+         * Renders a character into the image.
+         *
+         * @param c the character to render
+         * @return the ARGB pixels of the rendered character, row-major, valid until the next render
+         */
+        int[] render(char c) {
+            Arrays.fill(pixels, 0);
+            graphics.drawString(Character.toString(c), xOffset, yOffset);
+            return pixels;
+        }
+    }
 }
@@ -1,11 +1,105 @@
 package ascii_output;
 
+import ascii_art.PipelineStage;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.logging.Logger;
+
 /**
  * Output a 2D array of chars to the console.
+ * Every row, spacing included, is built in a reusable buffer and encoded into a large byte buffer
+ * in the charset of the standard output, which is written to {@link System#out} (as redirected by
+ * {@link System#setOut} at the time of the frame) one whole buffer at a time, instead of a write
+ * and an automatic flush per row. The output is flushed once per frame.
+ * Instances are not safe for use from multiple threads.
  *
  * @author Dan Nirel
  */
 public class ConsoleAsciiOutput implements AsciiOutput {
+    //size of the output byte buffer.
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    //separator printed after every character.
+    private static final char SPACING = ' ';
+
+    //escape sequence setting a 24-bit foreground color, followed by "r;g;bm".
+    private static final String SET_COLOR = "\033[38;2;";
+
+    //escape sequence resetting the colors.
+    private static final String RESET_COLOR = "\033[0m";
+
+    //longest console text of a single colored char: color sequence, char and spacing.
+    private static final int MAX_COLORED_CHAR_LENGTH = SET_COLOR.length() + "255;255;255m".length() + 2;
+
+    //bit offset of the red channel in a packed RGB value.
+    private static final int RED_SHIFT = 16;
+
+    //bit offset of the green channel in a packed RGB value.
+    private static final int GREEN_SHIFT = 8;
+
+    //mask of a color channel.
+    private static final int CHANNEL_MASK = 0xFF;
+
+    //base of the printed color channels.
+    private static final int DECIMAL_BASE = 10;
+
+    //system properties naming the charset of the standard output, by precedence.
+    private static final String[] STDOUT_ENCODING_PROPERTIES = {"stdout.encoding", "sun.stdout.encoding"};
+
+    //reusable row buffer.
+    private char[] rowBuffer = new char[0];
+
+    //the stream the frames are written to, or null for the current System.out.
+    private final OutputStream out;
+
+    //reusable encoded output buffer.
+    private final ByteBuffer byteBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+    //encoder of the console charset.
+    private final CharsetEncoder encoder = consoleCharset().newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+    /**
+     * Constructs a ConsoleAsciiOutput writing to the standard output.
+     */
+    public ConsoleAsciiOutput() {
+        this.out = null;
+    }
+
+    /**
+     * Constructs a ConsoleAsciiOutput writing the console text to the given stream instead,
+     * e.g. a pipe or a file.
+     *
+     * @param out the stream to write to, not closed by the output
+     */
+    public ConsoleAsciiOutput(OutputStream out) {
+        this.out = out;
+    }
+
+    /**
+     * Determines the charset of the standard output: the one the JVM chose for it if any,
+     * otherwise the default charset.
+     *
+     * @return the charset of the standard output
+     */
+    private static Charset consoleCharset() {
+        for (String property : STDOUT_ENCODING_PROPERTIES) {
+            String encoding = System.getProperty(property);
+            if (encoding != null && Charset.isSupported(encoding)) {
+                return Charset.forName(encoding);
+            }
+        }
+        return Charset.defaultCharset();
+    }
+
     /**
      * Outputs a 2D array of characters to the console.
      * Each character is printed followed by a space, and a new line is printed after each row.
@@ -14,11 +108,173 @@ public class ConsoleAsciiOutput implements AsciiOutput {
      */
     @Override
     public void out(char[][] chars) {
-        for (int y = 0; y < chars.length; y++) {
-            for (int x = 0; x < chars[y].length; x++) {
-                System.out.print(chars[y][x] + " ");
+        writeFrame(chars, null);
+    }
+
+    /**
+     * Outputs a 2D array of characters to the console, each in its color, using 24-bit ANSI color
+     * escape sequences. The color is only set again where it changes along a row.
+     *
+     * @param chars  the 2D array of characters to be output
+     * @param colors the packed RGB color of every character
+     */
+    @Override
+    public void out(char[][] chars, int[][] colors) {
+        writeFrame(chars, colors);
+    }
+
+    /**
+     * Writes a 2D array of characters to the console as a single frame.
+     *
+     * @param chars  the 2D array of characters to be output
+     * @param colors the packed RGB color of every character, or null for uncolored output
+     */
+    private void writeFrame(char[][] chars, int[][] colors) {
+        String lineSeparator = System.lineSeparator();
+        PipelineStage.Timer timer = PipelineStage.OUTPUT.start();
+        try (timer) {
+            beginFrame();
+            for (int y = 0; y < chars.length; y++) {
+                int length = fillRow(chars[y], colors == null ? null : colors[y], lineSeparator);
+                write(CharBuffer.wrap(rowBuffer, 0, length));
             }
-            System.out.println();
+            endFrame();
+        } catch (IOException e) {
+            Logger.getGlobal().severe("Failed to write to the console");
         }
     }
+
+    /**
+     * Starts a new frame, flushing anything printed through System.out so far so it comes first.
+     */
+    void beginFrame() {
+        System.out.flush();
+        byteBuffer.clear();
+        encoder.reset();
+    }
+
+    /**
+     * Appends chars to the current frame.
+     *
+     * @param chars the chars to append
+     * @throws IOException if writing fails
+     */
+    void append(CharSequence chars) throws IOException {
+        write(CharBuffer.wrap(chars));
+    }
+
+    /**
+     * Ends the current frame, writing out and flushing everything appended to it.
+     *
+     * @throws IOException if writing fails
+     */
+    void endFrame() throws IOException {
+        encoder.encode(CharBuffer.allocate(0), byteBuffer, true);
+        encoder.flush(byteBuffer);
+        drain();
+        stream().flush();
+    }
+
+    /**
+     * Fills the row buffer with a row of characters, each followed by a space, and a line separator.
+     * A colored row sets the color before every run of same-colored characters and resets it at its end.
+     *
+     * @param row           the row of characters
+     * @param colors        the packed RGB colors of the row, or null for an uncolored row
+     * @param lineSeparator the line separator to end the row with
+     * @return the number of chars of the row
+     */
+    private int fillRow(char[] row, int[] colors, String lineSeparator) {
+        int capacity = row.length * (colors == null ? 2 : MAX_COLORED_CHAR_LENGTH) +
+                RESET_COLOR.length() + lineSeparator.length();
+        if (rowBuffer.length < capacity) {
+            rowBuffer = new char[capacity];
+        }
+        int length = 0;
+        for (int x = 0; x < row.length; x++) {
+            if (colors != null && (x == 0 || colors[x] != colors[x - 1])) {
+                length = append(SET_COLOR, length);
+                length = appendInt((colors[x] >> RED_SHIFT) & CHANNEL_MASK, length);
+                rowBuffer[length++] = ';';
+                length = appendInt((colors[x] >> GREEN_SHIFT) & CHANNEL_MASK, length);
+                rowBuffer[length++] = ';';
+                length = appendInt(colors[x] & CHANNEL_MASK, length);
+                rowBuffer[length++] = 'm';
+            }
+            rowBuffer[length++] = row[x];
+            rowBuffer[length++] = SPACING;
+        }
+        if (colors != null) {
+            length = append(RESET_COLOR, length);
+        }
+        return append(lineSeparator, length);
+    }
+
+    /**
+     * Appends a string to the row buffer.
+     *
+     * @param string the string to append
+     * @param length the number of chars already in the row buffer
+     * @return the number of chars in the row buffer after appending
+     */
+    private int append(String string, int length) {
+        string.getChars(0, string.length(), rowBuffer, length);
+        return length + string.length();
+    }
+
+    /**
+     * Appends the decimal digits of a color channel to the row buffer.
+     *
+     * @param value  the channel value, in [0, 255]
+     * @param length the number of chars already in the row buffer
+     * @return the number of chars in the row buffer after appending
+     */
+    private int appendInt(int value, int length) {
+        if (value >= DECIMAL_BASE * DECIMAL_BASE) {
+            rowBuffer[length++] = (char) ('0' + value / (DECIMAL_BASE * DECIMAL_BASE));
+        }
+        if (value >= DECIMAL_BASE) {
+            rowBuffer[length++] = (char) ('0' + value / DECIMAL_BASE % DECIMAL_BASE);
+        }
+        rowBuffer[length++] = (char) ('0' + value % DECIMAL_BASE);
+        return length;
+    }
+
+    /**
+     * Encodes chars into the byte buffer, writing the buffer out whenever it fills up.
+     *
+     * @param chars the chars to encode
+     * @throws IOException if writing fails
+     */
+    private void write(CharBuffer chars) throws IOException {
+        while (true) {
+            CoderResult result = encoder.encode(chars, byteBuffer, false);
+            if (result.isOverflow()) {
+                drain();
+            } else if (result.isUnderflow()) {
+                return;
+            } else {
+                result.throwException();
+            }
+        }
+    }
+
+    /**
+     * Writes the content of the byte buffer to the output stream and clears it.
+     *
+     * @throws IOException if writing fails
+     */
+    private void drain() throws IOException {
+        stream().write(byteBuffer.array(), 0, byteBuffer.position());
+        byteBuffer.clear();
+    }
+
+    /**
+     * Returns the stream the frames are written to.
+     *
+     * @return the stream given at construction, or else the current System.out
+     */
+    private OutputStream stream() {
+        return out != null ? out : System.out;
+    }
 }
@@ -0,0 +1,515 @@
+package ascii_art;
+
+import ascii_output.HtmlAsciiOutput;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import image.BrightnessMapCache;
+import image.ImageManager;
+import image_char_matching.SubImgCharMatcher;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The ConversionServer class serves ASCII art conversions over HTTP on the loopback interface,
+ * using the JDK's built-in HTTP server.
+ * <p>
+ * {@code POST /convert?res=<resolution>&charset=<chars|all>&output=<text|html>} with the image file
+ * as the request body returns the ASCII art as text (the console layout) or as an HTML document.
+ * {@code GET /metrics} returns request counts and latency percentiles as text.
+ * <p>
+ * Every request is handled on its own (virtual, when available) thread, while conversions run on
+ * a pool bounded by the number of cores in front of a bounded queue. A request is admitted before
+ * its upload is read, only while a worker or a queue slot is free for it; otherwise it is rejected
+ * with 429 Too Many Requests, so neither conversions nor buffered uploads pile up. Char matchers
+ * are shared by charset, and brightness maps by image content, across all requests.
+ */
+public class ConversionServer {
+    //usage message.
+    private static final String USAGE = "Usage: server [port] [queue capacity]";
+
+    //default port.
+    private static final int DEFAULT_PORT = 8080;
+
+    //default number of conversions waiting for a worker before requests are rejected.
+    private static final int DEFAULT_QUEUE_CAPACITY = 64;
+
+    //largest accepted image upload, in bytes.
+    private static final int MAX_UPLOAD_BYTES = 64 * 1024 * 1024;
+
+    //largest number of cached char matchers.
+    private static final int MAX_CACHED_CHARSETS = 64;
+
+    //conversion path.
+    private static final String CONVERT_PATH = "/convert";
+
+    //metrics path.
+    private static final String METRICS_PATH = "/metrics";
+
+    //resolution parameter.
+    private static final String RESOLUTION_PARAMETER = "res";
+
+    //charset parameter.
+    private static final String CHARSET_PARAMETER = "charset";
+
+    //output parameter.
+    private static final String OUTPUT_PARAMETER = "output";
+
+    //text output.
+    private static final String TEXT_OUTPUT = "text";
+
+    //html output.
+    private static final String HTML_OUTPUT = "html";
+
+    //charset argument adding all printable ASCII characters.
+    private static final String ALL_CHARSET = "all";
+
+    //default resolution.
+    private static final int DEFAULT_RESOLUTION = 128;
+
+    //default charset.
+    private static final String DEFAULT_CHARSET = "0123456789";
+
+    //html font.
+    private static final String HTML_FONT = "Courier New";
+
+    //name of the html output, used in its log messages.
+    private static final String HTML_OUTPUT_NAME = "response";
+
+    //prefix of the temporary upload files.
+    private static final String UPLOAD_FILE_PREFIX = "ascii_art_upload";
+
+    //text content type.
+    private static final String TEXT_CONTENT_TYPE = "text/plain; charset=utf-8";
+
+    //html content type.
+    private static final String HTML_CONTENT_TYPE = "text/html; charset=utf-8";
+
+    //listening message format.
+    private static final String LISTENING_FORMAT = "Listening on http://%s:%d%s%n";
+
+    //metrics format.
+    private static final String METRICS_FORMAT = "requests %d%nrejected %d%nfailed %d%n" +
+            "latency_mean_ms %.3f%nlatency_p50_ms %.3f%nlatency_p95_ms %.3f%nlatency_p99_ms %.3f%n" +
+            "latency_max_ms %.3f%nadmitted %d%nqueued %d%nactive %d%n";
+
+    //minimum ascii value.
+    private static final char MINIMUM_ASCII_VALUE = 32;
+
+    //maximum ascii value.
+    private static final char MAXIMUM_ASCII_VALUE = 127;
+
+    //OK status.
+    private static final int STATUS_OK = 200;
+
+    //bad request status.
+    private static final int STATUS_BAD_REQUEST = 400;
+
+    //method not allowed status.
+    private static final int STATUS_METHOD_NOT_ALLOWED = 405;
+
+    //payload too large status.
+    private static final int STATUS_PAYLOAD_TOO_LARGE = 413;
+
+    //unsupported media type status.
+    private static final int STATUS_UNSUPPORTED_MEDIA_TYPE = 415;
+
+    //too many requests status.
+    private static final int STATUS_TOO_MANY_REQUESTS = 429;
+
+    //internal error status.
+    private static final int STATUS_INTERNAL_ERROR = 500;
+
+    //size of the request body read buffer.
+    private static final int READ_BUFFER_SIZE = 1 << 16;
+
+    //the HTTP server.
+    private final HttpServer server;
+
+    //executor running a thread per request.
+    private final ExecutorService requestExecutor;
+
+    //bounded pool running the conversions.
+    private final ThreadPoolExecutor conversionPool;
+
+    //permits of the requests admitted at once, one per worker and queue slot.
+    private final Semaphore admissions;
+
+    //number of admission permits.
+    private final int maxAdmitted;
+
+    //brightness maps shared by all requests.
+    private final BrightnessMapCache brightnessMapCache = new BrightnessMapCache();
+
+    //char matchers by sorted charset, shared by all requests.
+    private final Map<String, SubImgCharMatcher> charMatchers = new ConcurrentHashMap<>();
+
+    //latencies of the conversion requests.
+    private final LatencyHistogram latencies = new LatencyHistogram();
+
+    //request counters.
+    private final LongAdder requests = new LongAdder(), rejected = new LongAdder(), failed = new LongAdder();
+
+    /**
+     * Constructs a server bound to the loopback interface. It is not started yet.
+     *
+     * @param port          the port to listen on, 0 for any free port
+     * @param queueCapacity the number of conversions that may wait for a worker
+     * @throws IOException if the port cannot be bound
+     */
+    public ConversionServer(int port, int queueCapacity) throws IOException {
+        int workers = Runtime.getRuntime().availableProcessors();
+        this.conversionPool = new ThreadPoolExecutor(workers, workers, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity));
+        this.maxAdmitted = workers + queueCapacity;
+        this.admissions = new Semaphore(maxAdmitted);
+        this.requestExecutor = VirtualThreads.newThreadPerTaskExecutor();
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.setExecutor(requestExecutor);
+        server.createContext(CONVERT_PATH, this::handleConvert);
+        server.createContext(METRICS_PATH, this::handleMetrics);
+    }
+
+    /**
+     * Runs the server from the command line until the process is stopped.
+     *
+     * @param args an optional port and an optional queue capacity
+     */
+    public static void main(String[] args) {
+        try {
+            int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+            int queueCapacity = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_QUEUE_CAPACITY;
+            ConversionServer server = new ConversionServer(port, queueCapacity);
+            server.start();
+            System.out.printf(LISTENING_FORMAT, server.getAddress().getHostString(),
+                    server.getAddress().getPort(), CONVERT_PATH);
+        } catch (IllegalArgumentException | IOException e) {
+            System.out.println(USAGE);
+        }
+    }
+
+    /**
+     * Starts serving requests.
+     */
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Stops serving requests, letting running exchanges finish within the given delay.
+     *
+     * @param delaySeconds the longest time to wait for running exchanges, in seconds
+     */
+    public void stop(int delaySeconds) {
+        server.stop(delaySeconds);
+        conversionPool.shutdown();
+        requestExecutor.shutdown();
+    }
+
+    /**
+     * Returns the address the server listens on.
+     *
+     * @return the socket address
+     */
+    public InetSocketAddress getAddress() {
+        return server.getAddress();
+    }
+
+    /**
+     * Returns the latencies of the conversion requests.
+     *
+     * @return the latency histogram
+     */
+    public LatencyHistogram getLatencies() {
+        return latencies;
+    }
+
+    /**
+     * Handles a conversion request: admits it, reads the image, queues its conversion and sends
+     * the result. Uploads declared larger than the largest accepted one are refused unread.
+     *
+     * @param exchange the HTTP exchange
+     * @throws IOException if the response cannot be sent
+     */
+    private void handleConvert(HttpExchange exchange) throws IOException {
+        long start = System.nanoTime();
+        requests.increment();
+        try (exchange) {
+            if (!exchange.getRequestMethod().equals("POST")) {
+                sendText(exchange, STATUS_METHOD_NOT_ALLOWED, "Use POST with the image as the body.");
+                return;
+            }
+            Map<String, String> parameters = parseQuery(exchange.getRequestURI().getRawQuery());
+            int resolution;
+            try {
+                resolution = Integer.parseInt(parameters.getOrDefault(RESOLUTION_PARAMETER,
+                        Integer.toString(DEFAULT_RESOLUTION)));
+            } catch (NumberFormatException e) {
+                sendText(exchange, STATUS_BAD_REQUEST, "Invalid resolution.");
+                return;
+            }
+            String output = parameters.getOrDefault(OUTPUT_PARAMETER, TEXT_OUTPUT);
+            if (!output.equals(TEXT_OUTPUT) && !output.equals(HTML_OUTPUT)) {
+                sendText(exchange, STATUS_BAD_REQUEST, "Output must be text or html.");
+                return;
+            }
+            long declaredLength;
+            try {
+                String contentLength = exchange.getRequestHeaders().getFirst("Content-Length");
+                declaredLength = contentLength == null ? 0 : Long.parseLong(contentLength);
+            } catch (NumberFormatException e) {
+                sendText(exchange, STATUS_BAD_REQUEST, "Invalid content length.");
+                return;
+            }
+            if (declaredLength > MAX_UPLOAD_BYTES) {
+                sendText(exchange, STATUS_PAYLOAD_TOO_LARGE, "Image too large.");
+                return;
+            }
+            SubImgCharMatcher subImgCharMatcher = getCharMatcher(
+                    parameters.getOrDefault(CHARSET_PARAMETER, DEFAULT_CHARSET));
+            if (!admissions.tryAcquire()) {
+                rejectBusy(exchange);
+                return;
+            }
+            char[][] asciiArt;
+            try {
+                byte[] image = readBody(exchange.getRequestBody());
+                if (image == null) {
+                    sendText(exchange, STATUS_PAYLOAD_TOO_LARGE, "Image too large.");
+                    return;
+                }
+                Future<char[][]> conversion;
+                try {
+                    conversion = conversionPool.submit(() -> convert(image, resolution, subImgCharMatcher));
+                } catch (RejectedExecutionException e) {
+                    rejectBusy(exchange);
+                    return;
+                }
+                try {
+                    asciiArt = conversion.get();
+                } catch (ExecutionException e) {
+                    sendError(exchange, e.getCause());
+                    return;
+                }
+            } finally {
+                admissions.release();
+            }
+            if (output.equals(HTML_OUTPUT)) {
+                exchange.getResponseHeaders().set("Content-Type", HTML_CONTENT_TYPE);
+                exchange.sendResponseHeaders(STATUS_OK, 0);
+                new HtmlAsciiOutput(HTML_OUTPUT_NAME, HTML_FONT)
+                        .writeTo(exchange.getResponseBody(), asciiArt, null);
+            } else {
+                sendText(exchange, STATUS_OK, toText(asciiArt));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            latencies.record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Handles a metrics request.
+     *
+     * @param exchange the HTTP exchange
+     * @throws IOException if the response cannot be sent
+     */
+    private void handleMetrics(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            sendText(exchange, STATUS_OK, String.format(METRICS_FORMAT, requests.sum(), rejected.sum(),
+                    failed.sum(), latencies.getMeanMillis(), latencies.getPercentileMillis(50),
+                    latencies.getPercentileMillis(95), latencies.getPercentileMillis(99),
+                    latencies.getMaxMillis(), maxAdmitted - admissions.availablePermits(),
+                    conversionPool.getQueue().size(),
+                    conversionPool.getActiveCount()));
+        }
+    }
+
+    /**
+     * Converts an uploaded image. The upload goes through a temporary file, the input of ImageManager.
+     *
+     * @param image             the image file content
+     * @param resolution        the resolution
+     * @param subImgCharMatcher the char matcher of the charset
+     * @return a 2D char array representing the ASCII art
+     * @throws IOException                            if the image cannot be decoded
+     * @throws ResolutionExceedingBoundariesException if the resolution is invalid for the image
+     * @throws EmptyCharsetException                  if the charset is empty
+     */
+    private char[][] convert(byte[] image, int resolution, SubImgCharMatcher subImgCharMatcher)
+            throws IOException, ResolutionExceedingBoundariesException, EmptyCharsetException {
+        Path file = Files.createTempFile(UPLOAD_FILE_PREFIX, null);
+        try {
+            Files.write(file, image);
+            ImageManager imageManager = ImageManager.open(file.toString(), resolution, brightnessMapCache);
+            return new AsciiArtAlgorithm(imageManager.getBrightnessMap(), subImgCharMatcher,
+                    AsciiArtAlgorithm.configuredPool()).run();
+        } finally {
+            // the file is unique to this request, only the maps of its content are worth keeping
+            brightnessMapCache.forgetFile(file.toFile());
+            Files.deleteIfExists(file);
+        }
+    }
+
+    /**
+     * Retrieves the shared char matcher of a charset, creating it on first use.
+     * Matchers are never modified once shared, so concurrent lookups are safe.
+     *
+     * @param charset the charset parameter: the literal characters of the charset, or "all"
+     * @return the char matcher
+     */
+    private SubImgCharMatcher getCharMatcher(String charset) {
+        TreeSet<Character> chars = new TreeSet<>();
+        if (charset.equals(ALL_CHARSET)) {
+            for (char c = MINIMUM_ASCII_VALUE; c < MAXIMUM_ASCII_VALUE; c++) {
+                chars.add(c);
+            }
+        } else {
+            for (char c : charset.toCharArray()) {
+                chars.add(c);
+            }
+        }
+        StringBuilder key = new StringBuilder();
+        for (char c : chars) {
+            key.append(c);
+        }
+        SubImgCharMatcher cached = charMatchers.get(key.toString());
+        if (cached != null) {
+            return cached;
+        }
+        SubImgCharMatcher subImgCharMatcher = new SubImgCharMatcher(key.toString().toCharArray());
+        if (charMatchers.size() < MAX_CACHED_CHARSETS) {
+            SubImgCharMatcher previous = charMatchers.putIfAbsent(key.toString(), subImgCharMatcher);
+            return previous != null ? previous : subImgCharMatcher;
+        }
+        return subImgCharMatcher;
+    }
+
+    /**
+     * Rejects a request while every worker and queue slot is taken.
+     *
+     * @param exchange the HTTP exchange
+     * @throws IOException if the response cannot be sent
+     */
+    private void rejectBusy(HttpExchange exchange) throws IOException {
+        rejected.increment();
+        exchange.getResponseHeaders().set("Retry-After", "1");
+        sendText(exchange, STATUS_TOO_MANY_REQUESTS, "Too many conversions in progress.");
+    }
+
+    /**
+     * Sends the error response of a failed conversion.
+     *
+     * @param exchange the HTTP exchange
+     * @param cause    the failure
+     * @throws IOException if the response cannot be sent
+     */
+    private void sendError(HttpExchange exchange, Throwable cause) throws IOException {
+        if (cause instanceof ResolutionExceedingBoundariesException) {
+            sendText(exchange, STATUS_BAD_REQUEST, "Resolution exceeds the image boundaries.");
+        } else if (cause instanceof EmptyCharsetException) {
+            sendText(exchange, STATUS_BAD_REQUEST, "Charset is empty.");
+        } else if (cause instanceof IOException) {
+            sendText(exchange, STATUS_UNSUPPORTED_MEDIA_TYPE, "Could not read the image.");
+        } else {
+            failed.increment();
+            sendText(exchange, STATUS_INTERNAL_ERROR, "Conversion failed.");
+        }
+    }
+
+    /**
+     * Sends a text response.
+     *
+     * @param exchange the HTTP exchange
+     * @param status   the status code
+     * @param text     the response body
+     * @throws IOException if the response cannot be sent
+     */
+    private static void sendText(HttpExchange exchange, int status, String text) throws IOException {
+        byte[] body = text.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", TEXT_CONTENT_TYPE);
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    /**
+     * Formats ASCII art in the console layout: every character followed by a space, one row per line.
+     *
+     * @param asciiArt the ASCII art
+     * @return the text
+     */
+    private static String toText(char[][] asciiArt) {
+        StringBuilder text = new StringBuilder(asciiArt.length * (asciiArt[0].length * 2 + 1));
+        for (char[] row : asciiArt) {
+            for (char c : row) {
+                text.append(c).append(' ');
+            }
+            text.append('\n');
+        }
+        return text.toString();
+    }
+
+    /**
+     * Reads a request body, up to the largest accepted upload.
+     *
+     * @param body the request body stream
+     * @return the body, or null if it is too large
+     * @throws IOException if the body cannot be read
+     */
+    private static byte[] readBody(InputStream body) throws IOException {
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        byte[] buffer = new byte[READ_BUFFER_SIZE];
+        for (int read = body.read(buffer); read != -1; read = body.read(buffer)) {
+            if (content.size() + read > MAX_UPLOAD_BYTES) {
+                return null;
+            }
+            content.write(buffer, 0, read);
+        }
+        return content.toByteArray();
+    }
+
+    /**
+     * Parses a raw URL query into its decoded parameters; repeated parameters keep their last value.
+     *
+     * @param query the raw query, possibly null
+     * @return the parameters by name
+     */
+    private static Map<String, String> parseQuery(String query) {
+        Map<String, String> parameters = new HashMap<>();
+        if (query == null) {
+            return parameters;
+        }
+        for (String pair : query.split("&")) {
+            int equals = pair.indexOf('=');
+            if (equals > 0) {
+                parameters.put(URLDecoder.decode(pair.substring(0, equals), StandardCharsets.UTF_8),
+                        URLDecoder.decode(pair.substring(equals + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return parameters;
+    }
+}
@@ -0,0 +1,74 @@
+package ascii_art;
+
+import image.FrameSequence;
+import image_char_matching.SubImgCharMatcher;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The FrameConverter class converts the frames of a FrameSequence to ASCII art.
+ * Characters of tiles that did not change since the previous frame are copied from the previous
+ * ASCII art instead of being matched again.
+ */
+public class FrameConverter {
+    //sub images char matcher field.
+    private final SubImgCharMatcher subImgCharMatcher;
+
+    //the ASCII art of the previous frame.
+    private char[][] previousAsciiArt;
+
+    /**
+     * Constructs a FrameConverter with the given char matcher.
+     *
+     * @param subImgCharMatcher the char matcher; must not change while a sequence is converted
+     */
+    public FrameConverter(SubImgCharMatcher subImgCharMatcher) {
+        this.subImgCharMatcher = subImgCharMatcher;
+    }
+
+    /**
+     * Converts the next frame of a sequence.
+     *
+     * @param frame the frame, following the frame of the previous call
+     * @return a 2D char array representing the ASCII art of the frame
+     * @throws EmptyCharsetException if the character set is empty
+     */
+    public char[][] convert(FrameSequence.Frame frame) throws EmptyCharsetException {
+        if (subImgCharMatcher.getCharset().isEmpty()) {
+            throw new EmptyCharsetException();
+        }
+        double[][] brightnessMap = frame.getBrightnessMap();
+        char[][] asciiArt = new char[brightnessMap.length][brightnessMap[0].length];
+        for (int i = 0; i < asciiArt.length; i++) {
+            for (int j = 0; j < asciiArt[i].length; j++) {
+                asciiArt[i][j] = previousAsciiArt == null || frame.isChanged(i, j) ?
+                        subImgCharMatcher.getCharByImageBrightness(brightnessMap[i][j]) :
+                        previousAsciiArt[i][j];
+            }
+        }
+        previousAsciiArt = asciiArt;
+        return asciiArt;
+    }
+
+    /**
+     * Converts every frame of a sequence.
+     *
+     * @param frames the frame sequence, closed once converted
+     * @return the ASCII art of every frame, in order
+     * @throws IOException           if a frame cannot be decoded
+     * @throws InterruptedException  if interrupted while waiting for a frame
+     * @throws EmptyCharsetException if the character set is empty
+     */
+    public List<char[][]> convertAll(FrameSequence frames)
+            throws IOException, InterruptedException, EmptyCharsetException {
+        List<char[][]> asciiArts = new ArrayList<>();
+        try (frames) {
+            for (FrameSequence.Frame frame = frames.next(); frame != null; frame = frames.next()) {
+                asciiArts.add(convert(frame));
+            }
+        }
+        return asciiArts;
+    }
+}
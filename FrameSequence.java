@@ -0,0 +1,497 @@
+package image;
+
+import ascii_art.ResolutionExceedingBoundariesException;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * A sequence of brightness maps computed from the frames of an animated GIF, or from the images of
+ * a directory of numbered frames. Frames are decoded by a background thread a few frames ahead of
+ * the consumer. Consecutive frames usually differ in a small region, so a tile whose pixels did not
+ * change since the previous frame keeps its previous brightness, and is reported as unchanged so
+ * the consumer can keep its previous character too.
+ */
+public class FrameSequence implements AutoCloseable {
+    // number of frames decoded ahead of the consumer.
+    private static final int PIPELINE_DEPTH = 4;
+
+    // format name of animated GIF files.
+    private static final String GIF_FORMAT = "gif";
+
+    // native metadata format of GIF streams.
+    private static final String GIF_STREAM_METADATA = "javax_imageio_gif_stream_1.0";
+
+    // native metadata format of GIF frames.
+    private static final String GIF_IMAGE_METADATA = "javax_imageio_gif_image_1.0";
+
+    // GIF disposal method restoring the frame area to the background.
+    private static final String RESTORE_TO_BACKGROUND = "restoreToBackgroundColor";
+
+    // GIF disposal method restoring the frame area to its previous content.
+    private static final String RESTORE_TO_PREVIOUS = "restoreToPrevious";
+
+    // marker of the end of the decoded frames.
+    private static final Image END_OF_FRAMES = new Image(new int[0], 0, 0);
+
+    // decoded frames waiting for conversion.
+    private final BlockingQueue<Image> frames = new ArrayBlockingQueue<>(PIPELINE_DEPTH);
+
+    // the decoding thread.
+    private final Thread decoder;
+
+    // frame geometry: canvas size, padding and tile size.
+    private final int width, height, widthPadding, heightPadding, subImageSize;
+
+    // the resolution.
+    private final int resolution;
+
+    // error stopping the decoding thread, if any.
+    private volatile Throwable decodeError;
+
+    // the previous frame.
+    private Image previousFrame;
+
+    // brightness map of the previous frame.
+    private double[][] previousBrightnessMap;
+
+    /**
+     * A frame of the sequence: its brightness map and which tiles changed since the previous frame.
+     */
+    public static class Frame {
+        // brightness map of the frame.
+        private final double[][] brightnessMap;
+
+        // whether each tile changed since the previous frame.
+        private final boolean[][] changedTiles;
+
+        Frame(double[][] brightnessMap, boolean[][] changedTiles) {
+            this.brightnessMap = brightnessMap;
+            this.changedTiles = changedTiles;
+        }
+
+        /**
+         * Retrieves the brightness map of the frame.
+         *
+         * @return The brightness map as a 2D array of doubles
+         */
+        public double[][] getBrightnessMap() {
+            return brightnessMap;
+        }
+
+        /**
+         * Tells whether a tile changed since the previous frame. Every tile of the first frame changed.
+         *
+         * @param row The tile row
+         * @param col The tile column
+         * @return Whether the tile changed
+         */
+        public boolean isChanged(int row, int col) {
+            return changedTiles[row][col];
+        }
+    }
+
+    /**
+     * Opens a frame sequence and starts decoding it.
+     *
+     * @param path       An animated GIF file, or a directory of frames numbered in their file names
+     * @param resolution The resolution of the brightness maps
+     * @throws IOException                            If the frames cannot be read
+     * @throws ResolutionExceedingBoundariesException If the resolution is invalid for the frame size
+     */
+    FrameSequence(String path, int resolution) throws IOException, ResolutionExceedingBoundariesException {
+        File file = new File(path);
+        List<File> frameFiles = file.isDirectory() ? listFrameFiles(file) : null;
+        int[] size = frameFiles == null ? readGifCanvasSize(file) : readImageSize(frameFiles.get(0));
+        this.width = size[0];
+        this.height = size[1];
+        this.resolution = resolution;
+        int paddedWidth = ImageManager.paddedSize(width);
+        int paddedHeight = ImageManager.paddedSize(height);
+        ImageManager.checkResolution(resolution, paddedWidth, paddedHeight);
+        this.widthPadding = (paddedWidth - width) / 2;
+        this.heightPadding = (paddedHeight - height) / 2;
+        this.subImageSize = paddedWidth / resolution;
+        this.decoder = new Thread(() -> decode(file, frameFiles));
+        this.decoder.setDaemon(true);
+        this.decoder.start();
+    }
+
+    /**
+     * Retrieves the next frame, waiting for it to be decoded.
+     *
+     * @return The next frame, or null after the last one
+     * @throws IOException          If a frame could not be decoded, with the cause of any unchecked
+     *                              failure of the decoder
+     * @throws InterruptedException If interrupted while waiting for the frame
+     */
+    public Frame next() throws IOException, InterruptedException {
+        if (previousFrame == END_OF_FRAMES) {
+            return null;
+        }
+        Image frame = frames.take();
+        if (frame == END_OF_FRAMES) {
+            previousFrame = END_OF_FRAMES;
+            Throwable error = decodeError;
+            if (error instanceof IOException) {
+                throw (IOException) error;
+            }
+            if (error != null) {
+                throw new IOException("Failed to decode a frame", error);
+            }
+            return null;
+        }
+        int rows = ImageManager.paddedSize(height) / subImageSize;
+        double[][] brightnessMap = new double[rows][resolution];
+        boolean[][] changedTiles = new boolean[rows][resolution];
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < resolution; j++) {
+                int top = i * subImageSize - heightPadding;
+                int left = j * subImageSize - widthPadding;
+                if (previousFrame != null && sameTile(previousFrame, frame, top, left)) {
+                    brightnessMap[i][j] = previousBrightnessMap[i][j];
+                } else {
+                    brightnessMap[i][j] = tileBrightness(frame, top, left);
+                    changedTiles[i][j] = true;
+                }
+            }
+        }
+        previousFrame = frame;
+        previousBrightnessMap = brightnessMap;
+        return new Frame(brightnessMap, changedTiles);
+    }
+
+    /**
+     * Stops decoding.
+     */
+    @Override
+    public void close() {
+        decoder.interrupt();
+    }
+
+    /**
+     * Tells whether the image pixels of a tile are the same in two frames.
+     *
+     * @param previous The previous frame
+     * @param current  The current frame
+     * @param top      The top row of the tile, in frame coordinates
+     * @param left     The left column of the tile, in frame coordinates
+     * @return Whether the tile did not change
+     */
+    private boolean sameTile(Image previous, Image current, int top, int left) {
+        Image previousTile = tileRegion(previous, top, left);
+        Image currentTile = tileRegion(current, top, left);
+        int tileWidth = currentTile.getWidth();
+        for (int x = 0; x < currentTile.getHeight(); x++) {
+            int previousStart = previousTile.rowStart(x);
+            int currentStart = currentTile.rowStart(x);
+            if (!Arrays.equals(previousTile.raster(), previousStart, previousStart + tileWidth,
+                    currentTile.raster(), currentStart, currentStart + tileWidth)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns a view of the image pixels of a tile of a frame, without its padding.
+     *
+     * @param frame The frame
+     * @param top   The top row of the tile, in frame coordinates
+     * @param left  The left column of the tile, in frame coordinates
+     * @return The region of the frame inside the tile, possibly empty
+     */
+    private Image tileRegion(Image frame, int top, int left) {
+        int firstRow = Math.min(Math.max(top, 0), height);
+        int firstColumn = Math.min(Math.max(left, 0), width);
+        int endRow = Math.max(firstRow, Math.min(top + subImageSize, height));
+        int endColumn = Math.max(firstColumn, Math.min(left + subImageSize, width));
+        return frame.getSubImage(firstRow, firstColumn, endColumn - firstColumn, endRow - firstRow);
+    }
+
+    /**
+     * Computes the brightness of a tile of a frame, its padding pixels being white.
+     *
+     * @param frame The frame
+     * @param top   The top row of the tile, in frame coordinates
+     * @param left  The left column of the tile, in frame coordinates
+     * @return The brightness of the tile, in [0, 1]
+     */
+    private double tileBrightness(Image frame, int top, int left) {
+        Image tile = tileRegion(frame, top, left);
+        LumaKernel kernel = LumaKernel.get();
+        long sum = 0;
+        for (int x = 0; x < tile.getHeight(); x++) {
+            int rowStart = tile.rowStart(x);
+            sum += kernel.sum(tile.raster(), rowStart, rowStart + tile.getWidth());
+        }
+        long imagePixels = (long) tile.getWidth() * tile.getHeight();
+        long tilePixels = (long) subImageSize * subImageSize;
+        long whiteLuma = ImageManager.luma(ImageManager.WHITE_RGB);
+        return (sum + (tilePixels - imagePixels) * whiteLuma) / ((double) tilePixels * whiteLuma);
+    }
+
+    /**
+     * Decodes every frame into the queue, then the end marker. Runs on the decoding thread.
+     * The end marker is queued whatever stops the decoding, so the consumer never waits forever;
+     * any failure is handed over to the consumer along with it.
+     *
+     * @param file       The GIF file
+     * @param frameFiles The frame files, or null for a GIF file
+     */
+    private void decode(File file, List<File> frameFiles) {
+        try {
+            if (frameFiles == null) {
+                decodeGif(file);
+            } else {
+                for (File frameFile : frameFiles) {
+                    Image frame = new Image(frameFile.getPath());
+                    if (frame.getWidth() != width || frame.getHeight() != height) {
+                        throw new IOException("Frame size differs from the first frame: " + frameFile);
+                    }
+                    frames.put(frame);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Throwable e) {
+            decodeError = e;
+        } finally {
+            try {
+                frames.put(END_OF_FRAMES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Decodes the frames of an animated GIF, composing each one over the previous canvas
+     * according to its position and the disposal method of the previous frame.
+     *
+     * @param file The GIF file
+     * @throws IOException          If the file cannot be read
+     * @throws InterruptedException If interrupted while waiting for the consumer
+     */
+    private void decodeGif(File file) throws IOException, InterruptedException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(file)) {
+            ImageReader reader = gifReader(input);
+            try {
+                BufferedImage canvas = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+                Graphics2D graphics = canvas.createGraphics();
+                graphics.setBackground(Color.WHITE);
+                graphics.clearRect(0, 0, width, height);
+                int[] pixels = new int[width * height];
+                for (int index = 0; ; index++) {
+                    BufferedImage frame;
+                    try {
+                        frame = reader.read(index);
+                    } catch (IndexOutOfBoundsException e) {
+                        break;
+                    }
+                    Node metadata = reader.getImageMetadata(index).getAsTree(GIF_IMAGE_METADATA);
+                    Node descriptor = child(metadata, "ImageDescriptor");
+                    Node control = child(metadata, "GraphicControlExtension");
+                    int left = intAttribute(descriptor, "imageLeftPosition");
+                    int top = intAttribute(descriptor, "imageTopPosition");
+                    String disposal = control == null ? "" : attribute(control, "disposalMethod");
+                    BufferedImage saved = disposal.equals(RESTORE_TO_PREVIOUS) ? copy(canvas) : null;
+
+                    graphics.drawImage(frame, left, top, null);
+                    canvas.getRGB(0, 0, width, height, pixels, 0, width);
+                    int[] framePixels = Arrays.copyOf(pixels, pixels.length);
+                    for (int i = 0; i < framePixels.length; i++) {
+                        framePixels[i] &= Image.RGB_MASK;
+                    }
+                    frames.put(new Image(framePixels, width, height));
+
+                    if (disposal.equals(RESTORE_TO_BACKGROUND)) {
+                        graphics.clearRect(left, top, frame.getWidth(), frame.getHeight());
+                    } else if (saved != null) {
+                        graphics.drawImage(saved, 0, 0, null);
+                    }
+                }
+                graphics.dispose();
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Reads the logical screen size of an animated GIF.
+     *
+     * @param file The GIF file
+     * @return The width and height of the canvas
+     * @throws IOException If the file is not a readable GIF
+     */
+    private static int[] readGifCanvasSize(File file) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(file)) {
+            ImageReader reader = gifReader(input);
+            try {
+                IIOMetadata metadata = reader.getStreamMetadata();
+                Node screen = metadata == null ? null :
+                        child(metadata.getAsTree(GIF_STREAM_METADATA), "LogicalScreenDescriptor");
+                if (screen == null) {
+                    return new int[]{reader.getWidth(0), reader.getHeight(0)};
+                }
+                return new int[]{intAttribute(screen, "logicalScreenWidth"),
+                        intAttribute(screen, "logicalScreenHeight")};
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Reads the size of an image file without decoding it.
+     *
+     * @param file The image file
+     * @return The width and height of the image
+     * @throws IOException If the file cannot be read
+     */
+    private static int[] readImageSize(File file) throws IOException {
+        StripBrightnessReader reader = new StripBrightnessReader(file);
+        return new int[]{reader.getWidth(), reader.getHeight()};
+    }
+
+    /**
+     * Lists the frame files of a directory, ordered by the number in their names
+     * (then by name for files without a number).
+     *
+     * @param directory The directory of frames
+     * @return The frame files in order
+     * @throws IOException If the directory holds no frame
+     */
+    private static List<File> listFrameFiles(File directory) throws IOException {
+        File[] files = directory.listFiles(File::isFile);
+        if (files == null || files.length == 0) {
+            throw new IOException("No frames in directory: " + directory);
+        }
+        List<File> frameFiles = new ArrayList<>(Arrays.asList(files));
+        frameFiles.sort((a, b) -> {
+            long numberA = frameNumber(a.getName());
+            long numberB = frameNumber(b.getName());
+            return numberA != numberB ? Long.compare(numberA, numberB) : a.getName().compareTo(b.getName());
+        });
+        return frameFiles;
+    }
+
+    /**
+     * Extracts the last number of a frame file name.
+     *
+     * @param name The file name
+     * @return The number, or Long.MAX_VALUE if the name holds no digit
+     */
+    private static long frameNumber(String name) {
+        int end = name.length();
+        while (end > 0 && !Character.isDigit(name.charAt(end - 1))) {
+            end--;
+        }
+        int start = end;
+        while (start > 0 && Character.isDigit(name.charAt(start - 1))) {
+            start--;
+        }
+        if (start == end) {
+            return Long.MAX_VALUE;
+        }
+        try {
+            return Long.parseLong(name.substring(start, end));
+        } catch (NumberFormatException e) {
+            return Long.MAX_VALUE;
+        }
+    }
+
+    /**
+     * Finds a GIF reader for the stream and attaches it.
+     *
+     * @param input The image input stream
+     * @return The reader, to be disposed by the caller
+     * @throws IOException If the stream is not a GIF
+     */
+    private static ImageReader gifReader(ImageInputStream input) throws IOException {
+        if (input == null) {
+            throw new IOException("Cannot open frames file");
+        }
+        Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+        while (readers.hasNext()) {
+            ImageReader reader = readers.next();
+            if (reader.getFormatName().equalsIgnoreCase(GIF_FORMAT)) {
+                reader.setInput(input, false, false);
+                return reader;
+            }
+        }
+        throw new IOException("Not an animated GIF or a directory of frames");
+    }
+
+    /**
+     * Copies an image.
+     *
+     * @param image The image to copy
+     * @return The copy
+     */
+    private static BufferedImage copy(BufferedImage image) {
+        BufferedImage copy = new BufferedImage(image.getWidth(), image.getHeight(), image.getType());
+        copy.setData(image.getData());
+        return copy;
+    }
+
+    /**
+     * Finds a child of a metadata node by name.
+     *
+     * @param node The parent node
+     * @param name The name of the child
+     * @return The child, or null if missing
+     */
+    private static Node child(Node node, String name) {
+        for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child.getNodeName().equals(name)) {
+                return child;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Reads an attribute of a metadata node.
+     *
+     * @param node The node
+     * @param name The name of the attribute
+     * @return The value of the attribute, or an empty string if missing
+     */
+    private static String attribute(Node node, String name) {
+        NamedNodeMap attributes = node.getAttributes();
+        Node attribute = attributes == null ? null : attributes.getNamedItem(name);
+        return attribute == null ? "" : attribute.getNodeValue();
+    }
+
+    /**
+     * Reads an integer attribute of a metadata node.
+     *
+     * @param node The node, possibly null
+     * @param name The name of the attribute
+     * @return The value of the attribute, or 0 if missing
+     */
+    private static int intAttribute(Node node, String name) {
+        if (node == null) {
+            return 0;
+        }
+        String value = attribute(node, name);
+        return value.isEmpty() ? 0 : Integer.parseInt(value);
+    }
+}
@@ -0,0 +1,259 @@
+package image_char_matching;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.logging.Logger;
+
+/**
+ * A cache of glyph brightness values (the share of white pixels of a rendered character),
+ * keyed by font name, pixel resolution and character. Values live in memory and are persisted
+ * to a local properties file, so known glyphs never go through AWT font rendering again,
+ * not even after a restart. Safe for use from multiple threads; missing glyphs are rendered
+ * outside the lock, so threads rendering different glyphs do not wait for each other.
+ */
+public class GlyphBrightnessCache {
+    /**
+     * System property overriding the location of the persistent cache file.
+     */
+    public static final String CACHE_FILE_PROPERTY = "ascii_art.glyphCache";
+
+    // default location of the persistent cache file, relative to the user home.
+    private static final String DEFAULT_CACHE_FILE = ".ascii_art/glyph-brightness.properties";
+
+    // separator of the key parts in the cache file.
+    private static final char KEY_SEPARATOR = '|';
+
+    // comment written at the top of the cache file.
+    private static final String CACHE_FILE_COMMENT = "font|pixel resolution|char code = white pixel count";
+
+    // the shared cache instance.
+    private static GlyphBrightnessCache sharedCache;
+
+    // the persistent cache file, or null if the cache is memory only.
+    private final Path cacheFile;
+
+    // white pixel counts by key.
+    private final Map<String, Integer> whitePixelCounts = new HashMap<>();
+
+    // whether the memory holds counts missing from the cache file.
+    private boolean dirty;
+
+    // whether a shutdown hook persisting the cache was registered.
+    private boolean shutdownHookRegistered;
+
+    /**
+     * Constructs a cache backed by the given file, loading the values it already holds.
+     *
+     * @param cacheFile the persistent cache file, or null for a memory only cache
+     */
+    public GlyphBrightnessCache(Path cacheFile) {
+        this.cacheFile = cacheFile;
+        load();
+    }
+
+    /**
+     * Retrieves the cache shared by the whole process, backed by the default cache file
+     * (or the file named by the {@value #CACHE_FILE_PROPERTY} system property).
+     *
+     * @return the shared cache
+     */
+    public static synchronized GlyphBrightnessCache getShared() {
+        if (sharedCache == null) {
+            String location = System.getProperty(CACHE_FILE_PROPERTY);
+            Path file = location != null ? Paths.get(location) :
+                    Paths.get(System.getProperty("user.home"), DEFAULT_CACHE_FILE);
+            sharedCache = new GlyphBrightnessCache(file);
+        }
+        return sharedCache;
+    }
+
+    /**
+     * Retrieves the brightness of a character in the default font and pixel resolution,
+     * rendering it only if it is not cached yet.
+     *
+     * @param c the character
+     * @return the share of white pixels of the rendered character, in [0, 1]
+     */
+    public double getBrightness(char c) {
+        return getBrightness(CharConverter.getDefault(), c);
+    }
+
+    /**
+     * Retrieves the brightness of a character in the font and pixel resolution of a converter,
+     * rendering it with the converter only if it is not cached yet.
+     *
+     * @param charConverter the converter rendering the character
+     * @param c             the character
+     * @return the share of white pixels of the rendered character, in [0, 1]
+     */
+    public double getBrightness(CharConverter charConverter, char c) {
+        String key = key(charConverter, c);
+        Integer count = getCached(key);
+        if (count == null) {
+            count = charConverter.countWhitePixels(c);
+            putRendered(new String[]{key}, new int[]{count});
+        }
+        return toBrightness(charConverter, count);
+    }
+
+    /**
+     * Retrieves the brightness of every character of a charset in the font and pixel resolution
+     * of a converter. The characters not cached yet are rendered together, in parallel.
+     *
+     * @param charConverter the converter rendering the characters
+     * @param chars         the characters
+     * @return the share of white pixels of every rendered character, in the order of chars
+     */
+    public double[] getBrightness(CharConverter charConverter, char[] chars) {
+        String[] keys = new String[chars.length];
+        int[] counts = new int[chars.length];
+        int[] missing = new int[chars.length];
+        int missingCount = 0;
+        synchronized (this) {
+            for (int i = 0; i < chars.length; i++) {
+                keys[i] = key(charConverter, chars[i]);
+                Integer cached = whitePixelCounts.get(keys[i]);
+                if (cached != null) {
+                    counts[i] = cached;
+                } else {
+                    missing[missingCount++] = i;
+                }
+            }
+        }
+        if (missingCount > 0) {
+            char[] missingChars = new char[missingCount];
+            String[] missingKeys = new String[missingCount];
+            for (int j = 0; j < missingCount; j++) {
+                missingChars[j] = chars[missing[j]];
+                missingKeys[j] = keys[missing[j]];
+            }
+            int[] missingCounts = charConverter.countWhitePixels(missingChars);
+            putRendered(missingKeys, missingCounts);
+            for (int j = 0; j < missingCount; j++) {
+                counts[missing[j]] = missingCounts[j];
+            }
+        }
+        double[] brightness = new double[chars.length];
+        for (int i = 0; i < chars.length; i++) {
+            brightness[i] = toBrightness(charConverter, counts[i]);
+        }
+        return brightness;
+    }
+
+    /**
+     * Persists the values computed since the last save to the cache file.
+     * Failures are logged, the cache keeps working from memory.
+     */
+    public synchronized void save() {
+        if (cacheFile == null || !dirty) {
+            return;
+        }
+        Properties properties = new Properties();
+        for (Map.Entry<String, Integer> entry : whitePixelCounts.entrySet()) {
+            properties.setProperty(entry.getKey(), Integer.toString(entry.getValue()));
+        }
+        try {
+            Path directory = cacheFile.toAbsolutePath().getParent();
+            Files.createDirectories(directory);
+            Path temporary = Files.createTempFile(directory, cacheFile.getFileName().toString(), null);
+            try (OutputStream out = Files.newOutputStream(temporary)) {
+                properties.store(out, CACHE_FILE_COMMENT);
+            }
+            Files.move(temporary, cacheFile, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            dirty = false;
+        } catch (IOException e) {
+            Logger.getGlobal().warning(String.format("Failed to write glyph cache \"%s\"", cacheFile));
+        }
+    }
+
+    /**
+     * Builds the cache key of a character rendered by a converter.
+     *
+     * @param charConverter the converter rendering the character
+     * @param c             the character
+     * @return the key of the character, also used in the cache file
+     */
+    private static String key(CharConverter charConverter, char c) {
+        return charConverter.getFontName() + KEY_SEPARATOR + charConverter.getPixelResolution() +
+                KEY_SEPARATOR + (int) c;
+    }
+
+    /**
+     * Converts a white pixel count to the share of white pixels of the rendered square.
+     *
+     * @param charConverter the converter that rendered the character
+     * @param count         the number of white pixels
+     * @return the share of white pixels, in [0, 1]
+     */
+    private static double toBrightness(CharConverter charConverter, int count) {
+        int resolution = charConverter.getPixelResolution();
+        return (double) count / (resolution * resolution);
+    }
+
+    /**
+     * Retrieves a cached white pixel count.
+     *
+     * @param key the key of the character
+     * @return the number of white pixels, or null on a cache miss
+     */
+    private synchronized Integer getCached(String key) {
+        return whitePixelCounts.get(key);
+    }
+
+    /**
+     * Caches the white pixel counts of freshly rendered characters. Rendering is deterministic, so a
+     * character rendered concurrently by several threads is stored with the same count by each.
+     *
+     * @param keys   the keys of the characters
+     * @param counts the number of white pixels of every character, in the order of keys
+     */
+    private synchronized void putRendered(String[] keys, int[] counts) {
+        for (int i = 0; i < keys.length; i++) {
+            whitePixelCounts.put(keys[i], counts[i]);
+        }
+        markDirty();
+    }
+
+    /**
+     * Marks the cache as holding unsaved values, making sure they are saved at exit.
+     */
+    private void markDirty() {
+        dirty = true;
+        if (cacheFile != null && !shutdownHookRegistered) {
+            Runtime.getRuntime().addShutdownHook(new Thread(this::save));
+            shutdownHookRegistered = true;
+        }
+    }
+
+    /**
+     * Loads the values of the cache file, ignoring malformed entries.
+     */
+    private void load() {
+        if (cacheFile == null || !Files.isRegularFile(cacheFile)) {
+            return;
+        }
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(cacheFile)) {
+            properties.load(in);
+        } catch (IOException | IllegalArgumentException e) {
+            Logger.getGlobal().warning(String.format("Failed to read glyph cache \"%s\"", cacheFile));
+            return;
+        }
+        for (String key : properties.stringPropertyNames()) {
+            try {
+                whitePixelCounts.put(key, Integer.parseInt(properties.getProperty(key)));
+            } catch (NumberFormatException e) {
+                dirty = true;
+            }
+        }
+    }
+}
@@ -1,12 +1,28 @@
 package ascii_output;
 
-import java.io.BufferedWriter;
-import java.io.FileWriter;
+import ascii_art.PipelineStage;
+
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.logging.Logger;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * Output a 2D array of chars to an HTML file viewable in a web browser.
+ * Rows are escaped into a reusable char buffer through a precomputed escape table, encoded as
+ * UTF-8 into a large byte buffer and written through an NIO channel, optionally gzip compressed.
+ * Colored output wraps every run of same-colored characters of a row in a single span.
  *
  * @author Dan Nirel
  */
@@ -17,12 +33,77 @@ public class HtmlAsciiOutput implements AsciiOutput {
     //base font size.
     private static final double BASE_FONT_SIZE = 150.0;
 
+    //size of the output byte buffer.
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    //extension of gzip compressed files.
+    private static final String GZIP_EXTENSION = ".gz";
+
+    //html escape of every ASCII char, null for chars written as is.
+    private static final char[][] ESCAPES = new char[128][];
+
+    //longest html escape.
+    private static final int MAX_ESCAPE_LENGTH = 5;
+
+    //opening of a colored span, followed by six hex digits and SPAN_OPEN_END.
+    private static final String SPAN_OPEN = "<span style=\"color:#";
+
+    //end of the opening of a colored span.
+    private static final String SPAN_OPEN_END = "\">";
+
+    //closing of a colored span.
+    private static final String SPAN_CLOSE = "</span>";
+
+    //hex digits of a color.
+    private static final int COLOR_HEX_DIGITS = 6;
+
+    //longest html of a single colored char.
+    private static final int MAX_COLORED_CHAR_LENGTH = SPAN_OPEN.length() + COLOR_HEX_DIGITS +
+            SPAN_OPEN_END.length() + MAX_ESCAPE_LENGTH + SPAN_CLOSE.length();
+
+    //bits of a hex digit.
+    private static final int BITS_PER_HEX_DIGIT = 4;
+
+    //mask of the lowest hex digit.
+    private static final int HEX_DIGIT_MASK = 0xF;
+
+    //hex digit chars.
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    //nanoseconds in a second.
+    private static final double NANOS_IN_SECOND = 1e9;
+
+    static {
+        ESCAPES['<'] = "&lt;".toCharArray();
+        ESCAPES['>'] = "&gt;".toCharArray();
+        ESCAPES['&'] = "&amp;".toCharArray();
+    }
+
     //font name.
     private final String fontName;
 
     //file name.
     private final String filename;
 
+    //whether the file is gzip compressed.
+    private final boolean gzip;
+
+    //reusable escaped row buffer.
+    private char[] rowBuffer = new char[0];
+
+    //reusable encoded output buffer, on the heap: an output is created per request or file, and
+    //direct memory would only be released once the instance is collected.
+    private final ByteBuffer byteBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+    //encoder of the html text.
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+
+    //number of bytes of html produced by the last output.
+    private long lastBytesWritten;
+
+    //duration of the last output, in nanoseconds.
+    private long lastWriteNanos;
+
     /**
      * Constructs an HtmlAsciiOutput object with the specified filename and font name.
      *
@@ -30,8 +111,21 @@ public class HtmlAsciiOutput implements AsciiOutput {
      * @param fontName the name of the font to use for displaying characters in the HTML
      */
     public HtmlAsciiOutput(String filename, String fontName) {
+        this(filename, fontName, false);
+    }
+
+    /**
+     * Constructs an HtmlAsciiOutput object, optionally writing a gzip compressed file.
+     *
+     * @param filename the name of the HTML file to write output to; ".gz" is appended when
+     *                 compressing and missing
+     * @param fontName the name of the font to use for displaying characters in the HTML
+     * @param gzip     whether to gzip compress the file
+     */
+    public HtmlAsciiOutput(String filename, String fontName, boolean gzip) {
         this.fontName = fontName;
-        this.filename = filename;
+        this.filename = gzip && !filename.endsWith(GZIP_EXTENSION) ? filename + GZIP_EXTENSION : filename;
+        this.gzip = gzip;
     }
 
     /**
@@ -41,48 +135,264 @@ public class HtmlAsciiOutput implements AsciiOutput {
      */
     @Override
     public void out(char[][] chars) {
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(filename))) {
-            writer.write(String.format(
-                    "<!DOCTYPE html>\n" +
-                            "<html>\n" +
-                            "<body style=\"" +
-                            "\tCOLOR:#000000;" +
-                            "\tTEXT-ALIGN:center;" +
-                            "\tFONT-SIZE:1px;\">\n" +
-                            "<p style=\"" +
-                            "\twhite-space:pre;" +
-                            "\tFONT-FAMILY:%s;" +
-                            "\tFONT-SIZE:%frem;" +
-                            "\tLETTER-SPACING:0.15em;" +
-                            "\tLINE-HEIGHT:%fem;\">\n",
-                    fontName, BASE_FONT_SIZE / chars[0].length, BASE_LINE_SPACING));
-
-            for (int y = 0; y < chars.length; y++) {
-                for (int x = 0; x < chars[y].length; x++) {
-                    String htmlRep;
-                    switch (chars[y][x]) {
-                        case '<':
-                            htmlRep = "&lt;";
-                            break;
-                        case '>':
-                            htmlRep = "&gt;";
-                            break;
-                        case '&':
-                            htmlRep = "&amp;";
-                            break;
-                        default:
-                            htmlRep = String.valueOf(chars[y][x]);
-                    }
-                    writer.write(htmlRep);
-                }
-                writer.newLine();
-            }
-            writer.write(
-                    "</p>\n" +
-                            "</body>\n" +
-                            "</html>\n");
+        writeHtml(chars, null);
+    }
+
+    /**
+     * Outputs a 2D array of characters to an HTML file, each in its color.
+     * Runs of consecutive characters of the same color in a row share a single span.
+     *
+     * @param chars  the 2D array of characters to be output
+     * @param colors the packed RGB color of every character
+     */
+    @Override
+    public void out(char[][] chars, int[][] colors) {
+        writeHtml(chars, colors);
+    }
+
+    /**
+     * Writes the HTML document of a 2D array of characters to a stream instead of the file,
+     * uncompressed. The stream is not closed.
+     *
+     * @param out    the stream to write to
+     * @param chars  the 2D array of characters to be output
+     * @param colors the packed RGB color of every character, or null for uncolored output
+     * @throws IOException if writing to the stream fails
+     */
+    public void writeTo(OutputStream out, char[][] chars, int[][] colors) throws IOException {
+        long start = System.nanoTime();
+        PipelineStage.Timer timer = PipelineStage.OUTPUT.start();
+        try (timer) {
+            writeDocument(Channels.newChannel(out), chars, colors);
+        }
+        report(start, "stream");
+    }
+
+    /**
+     * Writes the HTML file of a 2D array of characters, reporting failures to the caller instead of
+     * logging them.
+     *
+     * @param chars  the 2D array of characters to be output
+     * @param colors the packed RGB color of every character, or null for uncolored output
+     * @throws IOException if the file cannot be written
+     */
+    public void write(char[][] chars, int[][] colors) throws IOException {
+        long start = System.nanoTime();
+        PipelineStage.Timer timer = PipelineStage.OUTPUT.start();
+        try (timer;
+             WritableByteChannel channel = openChannel()) {
+            writeDocument(channel, chars, colors);
+        }
+        report(start, '"' + filename + '"');
+    }
+
+    /**
+     * Writes the HTML file of a 2D array of characters, logging failures.
+     *
+     * @param chars  the 2D array of characters to be output
+     * @param colors the packed RGB color of every character, or null for uncolored output
+     */
+    private void writeHtml(char[][] chars, int[][] colors) {
+        try {
+            write(chars, colors);
         } catch (IOException e) {
             Logger.getGlobal().severe(String.format("Failed to write to \"%s\"", filename));
         }
     }
+
+    /**
+     * Writes the HTML document of a 2D array of characters to a channel.
+     *
+     * @param channel the channel to write to
+     * @param chars   the 2D array of characters to be output
+     * @param colors  the packed RGB color of every character, or null for uncolored output
+     * @throws IOException if writing fails
+     */
+    private void writeDocument(WritableByteChannel channel, char[][] chars, int[][] colors)
+            throws IOException {
+        lastBytesWritten = 0;
+        byteBuffer.clear();
+        encoder.reset();
+        write(channel, CharBuffer.wrap(String.format(
+                "<!DOCTYPE html>\n" +
+                        "<html>\n" +
+                        "<body style=\"" +
+                        "\tCOLOR:#000000;" +
+                        "\tTEXT-ALIGN:center;" +
+                        "\tFONT-SIZE:1px;\">\n" +
+                        "<p style=\"" +
+                        "\twhite-space:pre;" +
+                        "\tFONT-FAMILY:%s;" +
+                        "\tFONT-SIZE:%frem;" +
+                        "\tLETTER-SPACING:0.15em;" +
+                        "\tLINE-HEIGHT:%fem;\">\n",
+                fontName, BASE_FONT_SIZE / chars[0].length, BASE_LINE_SPACING)));
+
+        String lineSeparator = System.lineSeparator();
+        for (int y = 0; y < chars.length; y++) {
+            int length = escapeRow(chars[y], colors == null ? null : colors[y], lineSeparator);
+            write(channel, CharBuffer.wrap(rowBuffer, 0, length));
+        }
+        write(channel, CharBuffer.wrap(
+                "</p>\n" +
+                        "</body>\n" +
+                        "</html>\n"));
+        flush(channel);
+    }
+
+    /**
+     * Computes and logs the throughput of the output that just ended.
+     *
+     * @param start       the System.nanoTime() at which the output started
+     * @param destination the description of the destination of the output
+     */
+    private void report(long start, String destination) {
+        lastWriteNanos = System.nanoTime() - start;
+        Logger.getGlobal().fine(String.format("Wrote %d bytes of html to %s at %.0f bytes/s",
+                lastBytesWritten, destination, getLastBytesPerSecond()));
+    }
+
+    /**
+     * Returns the number of bytes of HTML produced by the last output, before compression.
+     *
+     * @return the number of bytes
+     */
+    public long getLastBytesWritten() {
+        return lastBytesWritten;
+    }
+
+    /**
+     * Returns the duration of the last output, including compression and file writes.
+     *
+     * @return the duration in nanoseconds
+     */
+    public long getLastWriteNanos() {
+        return lastWriteNanos;
+    }
+
+    /**
+     * Returns the throughput of the last output, in bytes of HTML (before compression) per second.
+     *
+     * @return the throughput in bytes per second
+     */
+    public double getLastBytesPerSecond() {
+        return lastBytesWritten * NANOS_IN_SECOND / Math.max(1, lastWriteNanos);
+    }
+
+    /**
+     * Opens the output file as a channel, compressing through gzip if requested.
+     *
+     * @return the channel to write the html to
+     * @throws IOException if the file cannot be opened
+     */
+    private WritableByteChannel openChannel() throws IOException {
+        if (gzip) {
+            OutputStream file = Files.newOutputStream(Paths.get(filename));
+            return Channels.newChannel(new GZIPOutputStream(file, BUFFER_SIZE));
+        }
+        return FileChannel.open(Paths.get(filename), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+    }
+
+    /**
+     * Escapes a row of characters and a line separator into the row buffer, wrapping every run of
+     * characters of the same color in a colored span.
+     *
+     * @param row           the row of characters
+     * @param colors        the packed RGB colors of the row, or null for an uncolored row
+     * @param lineSeparator the line separator to end the row with
+     * @return the number of chars of the escaped row
+     */
+    private int escapeRow(char[] row, int[] colors, String lineSeparator) {
+        int capacity = row.length * (colors == null ? MAX_ESCAPE_LENGTH : MAX_COLORED_CHAR_LENGTH) +
+                lineSeparator.length();
+        if (rowBuffer.length < capacity) {
+            rowBuffer = new char[capacity];
+        }
+        int length = 0;
+        for (int x = 0; x < row.length; x++) {
+            if (colors != null && (x == 0 || colors[x] != colors[x - 1])) {
+                if (x > 0) {
+                    length = append(SPAN_CLOSE, length);
+                }
+                length = append(SPAN_OPEN, length);
+                for (int shift = (COLOR_HEX_DIGITS - 1) * BITS_PER_HEX_DIGIT; shift >= 0;
+                     shift -= BITS_PER_HEX_DIGIT) {
+                    rowBuffer[length++] = HEX_DIGITS[(colors[x] >> shift) & HEX_DIGIT_MASK];
+                }
+                length = append(SPAN_OPEN_END, length);
+            }
+            char c = row[x];
+            char[] escape = c < ESCAPES.length ? ESCAPES[c] : null;
+            if (escape == null) {
+                rowBuffer[length++] = c;
+            } else {
+                System.arraycopy(escape, 0, rowBuffer, length, escape.length);
+                length += escape.length;
+            }
+        }
+        if (colors != null && row.length > 0) {
+            length = append(SPAN_CLOSE, length);
+        }
+        return append(lineSeparator, length);
+    }
+
+    /**
+     * Appends a string to the row buffer.
+     *
+     * @param string the string to append
+     * @param length the number of chars already in the row buffer
+     * @return the number of chars in the row buffer after appending
+     */
+    private int append(String string, int length) {
+        string.getChars(0, string.length(), rowBuffer, length);
+        return length + string.length();
+    }
+
+    /**
+     * Encodes chars into the byte buffer, writing the buffer to the channel whenever it fills up.
+     *
+     * @param channel the output channel
+     * @param chars   the chars to encode
+     * @throws IOException if writing fails
+     */
+    private void write(WritableByteChannel channel, CharBuffer chars) throws IOException {
+        while (true) {
+            CoderResult result = encoder.encode(chars, byteBuffer, false);
+            if (result.isOverflow()) {
+                drain(channel);
+            } else if (result.isUnderflow()) {
+                return;
+            } else {
+                result.throwException();
+            }
+        }
+    }
+
+    /**
+     * Writes the remaining encoded bytes to the channel.
+     *
+     * @param channel the output channel
+     * @throws IOException if writing fails
+     */
+    private void flush(WritableByteChannel channel) throws IOException {
+        encoder.encode(CharBuffer.allocate(0), byteBuffer, true);
+        encoder.flush(byteBuffer);
+        drain(channel);
+    }
+
+    /**
+     * Writes the content of the byte buffer to the channel and clears it.
+     *
+     * @param channel the output channel
+     * @throws IOException if writing fails
+     */
+    private void drain(WritableByteChannel channel) throws IOException {
+        byteBuffer.flip();
+        lastBytesWritten += byteBuffer.remaining();
+        while (byteBuffer.hasRemaining()) {
+            channel.write(byteBuffer);
+        }
+        byteBuffer.clear();
+    }
 }
@@ -1,5 +1,7 @@
 package image;
 
+import ascii_art.PipelineStage;
+
 import javax.imageio.ImageIO;
 import java.awt.*;
 import java.awt.image.BufferedImage;
@@ -8,12 +10,37 @@ import java.io.IOException;
 
 /**
  * A package-private class of the package image.
+ * The pixels are stored as a flat, row-major array of packed RGB ints (0xRRGGBB),
+ * so a pixel costs four bytes instead of a full Color object.
+ * An image may be a view of a region of another image's raster, addressed by an offset and a row
+ * stride, so sub-images share the pixels of their parent instead of copying them.
  *
  * @author Dan Nirel
  */
 public class Image {
-    //2D pixels array
-    private final Color[][] pixelArray;
+    // mask of a single 8 bit color channel.
+    private static final int CHANNEL_MASK = 0xFF;
+
+    // shift of the red channel inside a packed pixel.
+    private static final int RED_SHIFT = 16;
+
+    // shift of the green channel inside a packed pixel.
+    private static final int GREEN_SHIFT = 8;
+
+    // mask of the RGB bits of a packed pixel.
+    static final int RGB_MASK = 0xFFFFFF;
+
+    // multiplier of the content hash (64 bit golden ratio).
+    private static final long HASH_MULTIPLIER = 0x9E3779B97F4A7C15L;
+
+    //row-major packed RGB pixels, possibly shared with other images.
+    private final int[] pixels;
+
+    //index of the top left pixel of the image in the raster.
+    private final int offset;
+
+    //distance between the starts of consecutive rows in the raster.
+    private final int stride;
 
     //width of the image.
     private final int width;
@@ -28,32 +55,71 @@ public class Image {
      * @throws IOException if an error occurs while reading the image file
      */
     public Image(String filename) throws IOException {
-        BufferedImage im = ImageIO.read(new File(filename));
-        width = im.getWidth();
-        height = im.getHeight();
-
+        PipelineStage.Timer timer = PipelineStage.DECODE.start();
+        try (timer) {
+            BufferedImage im = ImageIO.read(new File(filename));
+            if (im == null) {
+                throw new IOException("Unsupported image format: " + filename);
+            }
+            width = im.getWidth();
+            height = im.getHeight();
 
-        pixelArray = new Color[height][width];
-        for (int i = 0; i < height; i++) {
-            for (int j = 0; j < width; j++) {
-                pixelArray[i][j] = new Color(im.getRGB(j, i));
+            offset = 0;
+            stride = width;
+            pixels = im.getRGB(0, 0, width, height, null, 0, width);
+            for (int i = 0; i < pixels.length; i++) {
+                pixels[i] &= RGB_MASK;
             }
         }
     }
 
     /**
-     * Constructs an Image object with the specified pixel array, width, and height.
+     * Constructs an Image object with the specified packed pixel array, width, and height.
      *
-     * @param pixelArray the 2D array of colors representing the pixels of the image
-     * @param width      the width of the image
-     * @param height     the height of the image
+     * @param pixels the row-major array of packed RGB values representing the pixels of the image
+     * @param width  the width of the image
+     * @param height the height of the image
      */
-    public Image(Color[][] pixelArray, int width, int height) {
-        this.pixelArray = pixelArray;
+    public Image(int[] pixels, int width, int height) {
+        this(pixels, 0, width, width, height);
+    }
+
+    /**
+     * Constructs a view of a region of a raster of packed pixels.
+     *
+     * @param pixels the row-major array of packed RGB values the region lies in
+     * @param offset the index of the top left pixel of the region
+     * @param stride the distance between the starts of consecutive rows in the array
+     * @param width  the width of the region
+     * @param height the height of the region
+     */
+    private Image(int[] pixels, int offset, int stride, int width, int height) {
+        this.pixels = pixels;
+        this.offset = offset;
+        this.stride = stride;
         this.width = width;
         this.height = height;
     }
 
+    /**
+     * Returns a view of a region of the image, sharing its pixels without copying them.
+     * Creating a view costs O(1) whatever its size.
+     *
+     * @param x      the x-coordinate (row) of the top left pixel of the region
+     * @param y      the y-coordinate (column) of the top left pixel of the region
+     * @param width  the width of the region
+     * @param height the height of the region
+     * @return the region of the image
+     * @throws IllegalArgumentException if the region is not inside the image
+     */
+    public Image getSubImage(int x, int y, int width, int height) {
+        if (x < 0 || y < 0 || width < 0 || height < 0 || x + height > this.height || y + width > this.width) {
+            throw new IllegalArgumentException(String.format("Region %dx%d at (%d, %d) exceeds %dx%d image",
+                    width, height, x, y, this.width, this.height));
+        }
+        return new Image(pixels, offset + x * stride + y, stride, width, height);
+    }
+
     /**
      * Returns the width of the image.
      *
@@ -74,13 +140,166 @@ public class Image {
 
     /**
      * Gets the color of the pixel at the specified coordinates.
+     * Allocates a new Color, prefer {@link #getRGB(int, int)} in loops.
      *
      * @param x the x-coordinate of the pixel
      * @param y the y-coordinate of the pixel
      * @return the color of the pixel at the specified coordinates
      */
     public Color getPixel(int x, int y) {
-        return pixelArray[x][y];
+        return new Color(getRGB(x, y));
+    }
+
+    /**
+     * Gets the packed RGB value (0xRRGGBB) of the pixel at the specified coordinates.
+     *
+     * @param x the x-coordinate (row) of the pixel
+     * @param y the y-coordinate (column) of the pixel
+     * @return the packed RGB value of the pixel
+     */
+    public int getRGB(int x, int y) {
+        return pixels[offset + x * stride + y];
+    }
+
+    /**
+     * Gets the red channel of the pixel at the specified coordinates.
+     *
+     * @param x the x-coordinate (row) of the pixel
+     * @param y the y-coordinate (column) of the pixel
+     * @return the red value of the pixel, in [0, 255]
+     */
+    public int getRed(int x, int y) {
+        return red(getRGB(x, y));
+    }
+
+    /**
+     * Gets the green channel of the pixel at the specified coordinates.
+     *
+     * @param x the x-coordinate (row) of the pixel
+     * @param y the y-coordinate (column) of the pixel
+     * @return the green value of the pixel, in [0, 255]
+     */
+    public int getGreen(int x, int y) {
+        return green(getRGB(x, y));
+    }
+
+    /**
+     * Gets the blue channel of the pixel at the specified coordinates.
+     *
+     * @param x the x-coordinate (row) of the pixel
+     * @param y the y-coordinate (column) of the pixel
+     * @return the blue value of the pixel, in [0, 255]
+     */
+    public int getBlue(int x, int y) {
+        return blue(getRGB(x, y));
+    }
+
+    /**
+     * Gets the luma of the pixel at the specified coordinates, weighted by the given channel factors.
+     *
+     * @param x           the x-coordinate (row) of the pixel
+     * @param y           the y-coordinate (column) of the pixel
+     * @param redFactor   the weight of the red channel
+     * @param greenFactor the weight of the green channel
+     * @param blueFactor  the weight of the blue channel
+     * @return the weighted luma of the pixel
+     */
+    public double getLuma(int x, int y, double redFactor, double greenFactor, double blueFactor) {
+        int rgb = getRGB(x, y);
+        return red(rgb) * redFactor + green(rgb) * greenFactor + blue(rgb) * blueFactor;
+    }
+
+    /**
+     * Returns the raster the pixels of the image lie in, to be read in place from the start of a row
+     * (see {@link #rowStart(int)}) for the width of the image. The raster must not be modified.
+     *
+     * @return the shared raster
+     */
+    int[] raster() {
+        return pixels;
+    }
+
+    /**
+     * Returns the index in the raster of the first pixel of a row.
+     *
+     * @param x the x-coordinate (row)
+     * @return the index of the pixel (x, 0) in {@link #raster()}
+     */
+    int rowStart(int x) {
+        return offset + x * stride;
+    }
+
+    /**
+     * Computes a 64 bit hash of the dimensions and pixels of the image,
+     * identifying its decoded content independently of the file it was read from.
+     *
+     * @return the content hash of the image
+     */
+    public long contentHash() {
+        long hash = initialHash(width, height);
+        for (int x = 0; x < height; x++) {
+            hash = hashPixels(hash, pixels, rowStart(x), rowStart(x) + width);
+        }
+        return hash;
+    }
+
+    /**
+     * Starts a content hash of an image of the given dimensions.
+     *
+     * @param width  the width of the image
+     * @param height the height of the image
+     * @return the initial hash, to be extended with {@link #hashPixels(long, int[], int, int)}
+     */
+    static long initialHash(int width, int height) {
+        return ((long) width << Integer.SIZE) | height;
+    }
+
+    /**
+     * Extends a content hash with packed RGB pixels, in row-major order.
+     * Hashing an image in consecutive chunks gives the same hash as hashing it at once.
+     *
+     * @param hash   the hash so far
+     * @param pixels the packed RGB pixels
+     * @param from   the index of the first pixel to hash
+     * @param to     the index after the last pixel to hash
+     * @return the extended hash
+     */
+    static long hashPixels(long hash, int[] pixels, int from, int to) {
+        for (int i = from; i < to; i++) {
+            hash = (hash ^ pixels[i]) * HASH_MULTIPLIER;
+            hash ^= hash >>> Integer.SIZE;
+        }
+        return hash;
+    }
+
+    /**
+     * Extracts the red channel of a packed RGB value.
+     *
+     * @param rgb the packed RGB value
+     * @return the red value, in [0, 255]
+     */
+    static int red(int rgb) {
+        return (rgb >> RED_SHIFT) & CHANNEL_MASK;
+    }
+
+    /**
+     * Extracts the green channel of a packed RGB value.
+     *
+     * @param rgb the packed RGB value
+     * @return the green value, in [0, 255]
+     */
+    static int green(int rgb) {
+        return (rgb >> GREEN_SHIFT) & CHANNEL_MASK;
+    }
+
+    /**
+     * Extracts the blue channel of a packed RGB value.
+     *
+     * @param rgb the packed RGB value
+     * @return the blue value, in [0, 255]
+     */
+    static int blue(int rgb) {
+        return rgb & CHANNEL_MASK;
     }
 
     /**
@@ -89,15 +308,8 @@ public class Image {
      * @param fileName the name of the file to save the image to (without file extension)
      */
     public void saveImage(String fileName) {
-        // Initialize BufferedImage, assuming Color[][] is already properly populated.
-        BufferedImage bufferedImage = new BufferedImage(pixelArray[0].length, pixelArray.length,
-                BufferedImage.TYPE_INT_RGB);
-        // Set each pixel of the BufferedImage to the color from the Color[][].
-        for (int x = 0; x < pixelArray.length; x++) {
-            for (int y = 0; y < pixelArray[x].length; y++) {
-                bufferedImage.setRGB(y, x, pixelArray[x][y].getRGB());
-            }
-        }
+        BufferedImage bufferedImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        bufferedImage.setRGB(0, 0, width, height, pixels, offset, stride);
         File outputfile = new File(fileName + ".jpeg");
         try {
             ImageIO.write(bufferedImage, "jpeg", outputfile);
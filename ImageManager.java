@@ -1,9 +1,12 @@
 package image;
 
+import ascii_art.PipelineStage;
 import ascii_art.ResolutionExceedingBoundariesException;
 
-import java.awt.Color;
+import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * The ImageManager class handles image processing operations such as loading an image,
@@ -16,19 +19,74 @@ public class ImageManager {
     // max RGB value.
     private static final int MAX_RGB_VALUE = 255;
 
-    // red factor to calculate the brightness.
-    private static final double RED_FACTOR = 0.2126;
+    // bit offset of the red channel in a packed RGB value.
+    private static final int RED_SHIFT = 16;
 
-    // green factor to calculate the brightness.
-    private static final double GREEN_FACTOR = 0.7152;
+    // bit offset of the green channel in a packed RGB value.
+    private static final int GREEN_SHIFT = 8;
 
-    // blue factor to calculate the brightness.
-    private static final double BLUE_FACTOR = 0.0722;
+    // packed RGB value of a white pixel.
+    static final int WHITE_RGB = 0xFFFFFF;
+
+    // fixed-point scale of the luma factors, so luma sums are exact integers.
+    private static final int LUMA_SCALE = 10000;
+
+    // red factor to calculate the brightness (0.2126, scaled by LUMA_SCALE).
+    static final int RED_FACTOR = 2126;
+
+    // green factor to calculate the brightness (0.7152, scaled by LUMA_SCALE).
+    static final int GREEN_FACTOR = 7152;
+
+    // blue factor to calculate the brightness (0.0722, scaled by LUMA_SCALE).
+    static final int BLUE_FACTOR = 722;
+
+    // fixed-point luma of a white pixel.
+    private static final double MAX_LUMA = (double) MAX_RGB_VALUE * LUMA_SCALE;
 
     // minimum number of characters in a row.
     private static final int CHARS_IN_ROW_MINIMUM_VALUE = 1;
 
-    // image to manage.
+    /**
+     * Default number of pixels above which images are streamed in strips instead of decoded at once.
+     */
+    public static final long DEFAULT_STREAMING_THRESHOLD = 1L << 26;
+
+    /**
+     * Subsampling tolerance of {@link #setFullFidelity(boolean)}: the standard error of a tile
+     * brightness accepted when estimating it from a subsampled decode.
+     */
+    public static final double DEFAULT_SUBSAMPLING_TOLERANCE = 1.0 / 32;
+
+    /**
+     * System property computing brightness maps in parallel on the common fork/join pool when true,
+     * for every manager until {@link #setParallelism(int)} is called.
+     */
+    public static final String PARALLEL_PROPERTY = "image.parallelBrightness";
+
+    /**
+     * Default memory budget of the resolution pyramid of an image, in bytes.
+     */
+    public static final long DEFAULT_PYRAMID_MAX_BYTES = 16L * 1024 * 1024;
+
+    // largest standard deviation of brightness values in [0, 1].
+    private static final double MAX_BRIGHTNESS_DEVIATION = 0.5;
+
+    // number of pixel rows below which a band of the raster is not split between threads.
+    private static final int MIN_PIXEL_ROWS_PER_BAND = 64;
+
+    // number of tile rows below which a band of the brightness map is not split between threads.
+    private static final int MIN_TILE_ROWS_PER_BAND = 8;
+
+    // file of the managed image.
+    private File imageFile;
+
+    // fingerprint of the image file when it was loaded, checked before the file is read again.
+    private String imageFingerprint;
+
+    // content hash and dimensions of the managed image.
+    private BrightnessMapCache.ImageInfo imageInfo;
+
+    // image to manage, decoded lazily when the brightness cache cannot answer.
     private Image image;
 
     //the resolution.
@@ -37,6 +95,39 @@ public class ImageManager {
     //2D brightness map.
     private double[][] brightnessMap;
 
+    //version of the brightness map, incremented whenever the image or the resolution changes.
+    private long version;
+
+    //summed-area table of the image luma, without padding, built once per image.
+    private SummedAreaTable lumaTable;
+
+    //cache of brightness maps by image content and resolution.
+    private final BrightnessMapCache brightnessMapCache;
+
+    //pool computing padding, summed-area table and tiles in parallel, or null for sequential.
+    private ForkJoinPool pool;
+
+    //number of pixels above which images are streamed in strips instead of decoded at once.
+    private long streamingThreshold = DEFAULT_STREAMING_THRESHOLD;
+
+    //number of sampled pixels per tile axis needed to meet the subsampling tolerance, 0 for full fidelity.
+    private int samplesPerTileAxis;
+
+    //whether tile colors are computed alongside every brightness map.
+    private boolean colors;
+
+    //packed RGB average color of every tile, or null if not computed for the current brightness map.
+    private int[][] colorMap;
+
+    //pyramid of the tile luma sums of the decoded image, or null if not built.
+    private BrightnessPyramid pyramid;
+
+    //memory budget of the resolution pyramid, in bytes, 0 to never build it.
+    private long pyramidMaxBytes = DEFAULT_PYRAMID_MAX_BYTES;
+
+    //whether the resolution pyramid is built as soon as an image is loaded.
+    private boolean eagerPyramid;
+
     /**
      * Constructs an ImageManager object with the specified image path and resolution.
      * Initializes the image object and computes the brightness map.
@@ -46,40 +137,123 @@ public class ImageManager {
      * @throws IOException If there is an error reading the image file
      */
     public ImageManager(String imagePath, int resolution) throws IOException {
-        this.image = new Image(imagePath);
-        this.resolution = resolution;
+        this(imagePath, resolution, new BrightnessMapCache());
+    }
+
+    /**
+     * Constructs an ImageManager object with the specified image path, resolution and brightness cache.
+     *
+     * @param imagePath          The path to the image file
+     * @param resolution         The resolution for image processing
+     * @param brightnessMapCache The cache of brightness maps to use, possibly shared
+     * @throws IOException If there is an error reading the image file
+     */
+    public ImageManager(String imagePath, int resolution, BrightnessMapCache brightnessMapCache)
+            throws IOException {
+        this(resolution, brightnessMapCache);
+        loadImage(imagePath);
         this.brightnessMap = getImageBrightness();
     }
 
+    /**
+     * Constructs an ImageManager object without an image yet.
+     *
+     * @param resolution         The resolution for image processing
+     * @param brightnessMapCache The cache of brightness maps to use, possibly shared
+     */
+    private ImageManager(int resolution, BrightnessMapCache brightnessMapCache) {
+        this.brightnessMapCache = brightnessMapCache;
+        this.resolution = resolution;
+        // shared by all managers, so managers created per file or per request start no threads
+        this.pool = Boolean.getBoolean(PARALLEL_PROPERTY) ? ForkJoinPool.commonPool() : null;
+    }
+
+    /**
+     * Opens an image at a resolution that is checked against the image header before anything
+     * is decoded, for resolutions that do not come from a valid earlier one.
+     *
+     * @param imagePath          The path to the image file
+     * @param resolution         The resolution for image processing
+     * @param brightnessMapCache The cache of brightness maps to use, possibly shared
+     * @return The image manager
+     * @throws IOException                            If there is an error reading the image file
+     * @throws ResolutionExceedingBoundariesException If the resolution is invalid for the image
+     */
+    public static ImageManager open(String imagePath, int resolution, BrightnessMapCache brightnessMapCache)
+            throws IOException, ResolutionExceedingBoundariesException {
+        StripBrightnessReader header = new StripBrightnessReader(new File(imagePath));
+        checkResolution(resolution, paddedSize(header.getWidth()), paddedSize(header.getHeight()));
+        ImageManager imageManager = new ImageManager(resolution, brightnessMapCache);
+        imageManager.loadImage(imagePath);
+        imageManager.brightnessMap = imageManager.getImageBrightness();
+        return imageManager;
+    }
+
     /**
      * Sets the image to the one specified by the given image path.
+     * If the file was decoded before and did not change, its cached brightness maps are reused
+     * without decoding it again. The current resolution is checked against the new image before
+     * anything changes, and the previous image is kept if the new one fails to load.
      *
      * @param imagePath The path to the new image file
-     * @throws IOException If there is an error reading the new image file
+     * @throws IOException                            If there is an error reading the new image file
+     * @throws ResolutionExceedingBoundariesException If the current resolution is invalid for the new image
      */
-    public void setImage(String imagePath) throws IOException {
-        this.image = new Image(imagePath);
-        brightnessMap = getImageBrightness();
+    public void setImage(String imagePath) throws IOException, ResolutionExceedingBoundariesException {
+        File file = new File(imagePath);
+        BrightnessMapCache.ImageInfo info = brightnessMapCache.getImageInfo(file);
+        if (info != null) {
+            checkResolution(resolution, paddedSize(info.width), paddedSize(info.height));
+        } else {
+            StripBrightnessReader header = new StripBrightnessReader(file);
+            checkResolution(resolution, paddedSize(header.getWidth()), paddedSize(header.getHeight()));
+        }
+        File previousFile = imageFile;
+        String previousFingerprint = imageFingerprint;
+        BrightnessMapCache.ImageInfo previousInfo = imageInfo;
+        Image previousImage = image;
+        SummedAreaTable previousLumaTable = lumaTable;
+        BrightnessPyramid previousPyramid = pyramid;
+        int[][] previousColorMap = colorMap;
+        try {
+            loadImage(imagePath);
+            brightnessMap = getImageBrightness();
+        } catch (IOException | RuntimeException e) {
+            imageFile = previousFile;
+            imageFingerprint = previousFingerprint;
+            imageInfo = previousInfo;
+            image = previousImage;
+            lumaTable = previousLumaTable;
+            pyramid = previousPyramid;
+            colorMap = previousColorMap;
+            throw e;
+        }
+        version++;
     }
 
     /**
-     * Sets the resolution for image processing.
+     * Sets the resolution for image processing. The previous resolution and brightness map are
+     * kept if the map cannot be computed at the new resolution.
      *
      * @param resolution The new resolution value
      * @throws ResolutionExceedingBoundariesException If the specified resolution is invalid
+     * @throws UncheckedIOException                   If the image file must be read again but was
+     *                                                changed, deleted or cannot be read
      */
     public void setResolution(int resolution) throws ResolutionExceedingBoundariesException {
-        int paddedWidth = (int) Math.pow(LOG_BASE, log2(image.getWidth()));
-        int paddedHeight = (int) Math.pow(LOG_BASE, log2(image.getHeight()));
-
-        int minCharsInRow = Math.max(CHARS_IN_ROW_MINIMUM_VALUE, paddedWidth / paddedHeight);
-
-        if (resolution < minCharsInRow || resolution > paddedWidth) {
-            throw new ResolutionExceedingBoundariesException();
-        }
-
+        checkResolution(resolution, paddedSize(imageInfo.width), paddedSize(imageInfo.height));
+        int previousResolution = this.resolution;
+        int[][] previousColorMap = colorMap;
         this.resolution = resolution;
-        brightnessMap = getImageBrightness();
+        colorMap = null;
+        try {
+            brightnessMap = getImageBrightness();
+        } catch (RuntimeException e) {
+            this.resolution = previousResolution;
+            colorMap = previousColorMap;
+            throw e;
+        }
+        version++;
     }
 
     /**
@@ -91,6 +265,16 @@ public class ImageManager {
         return resolution;
     }
 
+    /**
+     * Retrieves the version of the brightness map, which changes whenever the image or the
+     * resolution is set, so callers can tell whether a brightness map they hold is still current.
+     *
+     * @return The version of the brightness map
+     */
+    public long getVersion() {
+        return version;
+    }
+
     /**
      * Retrieves the brightness map of the image.
      *
@@ -101,112 +285,620 @@ public class ImageManager {
     }
 
     /**
-     * Computes the brightness map of the image based on the current resolution.
+     * Retrieves the average color of every tile of the brightness map, computing it if it was not
+     * computed along with the brightness map, see {@link #setColors(boolean)}.
+     *
+     * @return The packed RGB average color of every tile, [tile rows][tile columns]
+     * @throws UncheckedIOException If the image file must be read again but was changed, deleted or
+     *                              cannot be read
+     */
+    public int[][] getColorMap() {
+        if (colorMap == null) {
+            computeImageBrightness(getSubsampling(), true);
+        }
+        return colorMap;
+    }
+
+    /**
+     * Sets whether the average color of every tile is computed in the same pass as its brightness,
+     * for colored output. Brightness maps then always come from a pass over the image pixels,
+     * instead of the brightness cache or the summed-area table. Takes effect from the next
+     * computed brightness map.
+     *
+     * @param colors Whether to compute tile colors
+     */
+    public void setColors(boolean colors) {
+        this.colors = colors;
+    }
+
+    /**
+     * Opens a multi-frame input at the current resolution: an animated GIF, or a directory of frames
+     * numbered in their file names. Frames are decoded ahead of the consumer, and tiles unchanged
+     * since the previous frame reuse its brightness.
+     *
+     * @param path The animated GIF file or the frames directory
+     * @return The frame sequence, to be closed by the caller
+     * @throws IOException                            If the frames cannot be read
+     * @throws ResolutionExceedingBoundariesException If the current resolution is invalid for the frames
+     */
+    public FrameSequence openFrames(String path) throws IOException, ResolutionExceedingBoundariesException {
+        return new FrameSequence(path, resolution);
+    }
+
+    /**
+     * Sets the number of threads padding the image and computing tile brightness.
+     * The brightness map is identical whatever the parallelism, since luma sums are exact integers.
+     * The pool of a previous call is shut down, the common pool of {@link #PARALLEL_PROPERTY} is not.
+     *
+     * @param parallelism The number of threads, 1 for sequential computation
+     * @throws IllegalArgumentException If the parallelism is not positive
+     */
+    public void setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be positive: " + parallelism);
+        }
+        if (pool != null && pool != ForkJoinPool.commonPool()) {
+            pool.shutdown();
+        }
+        pool = parallelism == 1 ? null : new ForkJoinPool(parallelism);
+    }
+
+    /**
+     * Sets the number of pixels above which images are never decoded at once. Such images are read
+     * in a few horizontal strips whose luma is accumulated per tile, so memory stays proportional to
+     * one strip plus the brightness map; the file is streamed again for every uncached resolution.
+     * Every strip decodes the image from its start, see {@link StripBrightnessReader}.
+     * Takes effect from the next image set.
+     *
+     * @param streamingThreshold The number of pixels, 0 to always stream
+     */
+    public void setStreamingThreshold(long streamingThreshold) {
+        this.streamingThreshold = streamingThreshold;
+    }
+
+    /**
+     * Sets the accuracy tolerance of subsampled decoding, which is off by default. When every tile
+     * is much larger than needed to estimate its brightness within the tolerance (as a standard
+     * error), brightness maps are computed from a decode with ImageReadParam source subsampling
+     * instead, decoding only one pixel per s x s block. The factor only depends on the image
+     * dimensions and the resolution, so a resolution always gives the same map, even for an image
+     * already decoded. Takes effect from the next computed brightness map.
+     *
+     * @param tolerance The accepted standard error of a tile brightness, 0 to force full fidelity
+     * @throws IllegalArgumentException If the tolerance is negative
+     */
+    public void setSubsamplingTolerance(double tolerance) {
+        if (tolerance < 0) {
+            throw new IllegalArgumentException("Tolerance must not be negative: " + tolerance);
+        }
+        this.samplesPerTileAxis = tolerance == 0 ? 0 : samplesPerTileAxis(tolerance);
+    }
+
+    /**
+     * Sets whether every brightness map is computed from all pixels, the default, or may be
+     * estimated from a subsampled decode within {@link #DEFAULT_SUBSAMPLING_TOLERANCE}.
+     *
+     * @param fullFidelity Whether to force full-fidelity decoding
+     */
+    public void setFullFidelity(boolean fullFidelity) {
+        setSubsamplingTolerance(fullFidelity ? 0 : DEFAULT_SUBSAMPLING_TOLERANCE);
+    }
+
+    /**
+     * Sets the memory budget of the resolution pyramid. Once built from a decoded image, the pyramid
+     * answers every resolution it holds without touching the pixels or the summed-area table, so
+     * changing the resolution up or down is a lookup. The finest resolutions are left out first
+     * when the whole pyramid does not fit the budget; they are still computed from the
+     * summed-area table. Colored and streamed brightness maps do not use the pyramid.
+     * Takes effect from the next image set.
+     *
+     * @param pyramidMaxBytes The memory budget, in bytes, 0 to disable the pyramid
+     * @throws IllegalArgumentException If the budget is negative
+     */
+    public void setPyramidMaxBytes(long pyramidMaxBytes) {
+        if (pyramidMaxBytes < 0) {
+            throw new IllegalArgumentException("Pyramid budget must not be negative: " + pyramidMaxBytes);
+        }
+        this.pyramidMaxBytes = pyramidMaxBytes;
+    }
+
+    /**
+     * Sets whether the resolution pyramid is built as soon as an image is set, decoding it even if
+     * its brightness map is cached, rather than on the first brightness map computed from the pixels.
+     * Images above the streaming threshold never get a pyramid. Takes effect from the next image set.
+     *
+     * @param eagerPyramid Whether to build the pyramid eagerly
+     */
+    public void setEagerPyramid(boolean eagerPyramid) {
+        this.eagerPyramid = eagerPyramid;
+    }
+
+    /**
+     * Retrieves the brightness cache used by this manager.
+     *
+     * @return The brightness map cache
+     */
+    public BrightnessMapCache getBrightnessMapCache() {
+        return brightnessMapCache;
+    }
+
+    /**
+     * Points the manager at a new image file. The file is decoded only if the cache does not
+     * already know its content; the summed-area table is built lazily on the first cache miss.
+     * Images coarse enough at the current resolution to be subsampled are identified by the hash
+     * of their file bytes, so a copy of a file already seen reuses its maps without any decode.
+     * Images above the streaming threshold are never decoded at once: their content hash and the
+     * brightness map at the current resolution are computed in a single streamed pass.
+     * The resolution pyramid is built right away if it is eager.
+     *
+     * @param imagePath The path to the image file
+     * @throws IOException If there is an error reading the image file
+     */
+    private void loadImage(String imagePath) throws IOException {
+        File file = new File(imagePath);
+        String fingerprint = BrightnessMapCache.fingerprint(file);
+        colorMap = null;
+        BrightnessMapCache.ImageInfo info = brightnessMapCache.getImageInfo(file);
+        Image decoded = null;
+        if (info == null) {
+            StripBrightnessReader reader = new StripBrightnessReader(file);
+            if (getSubsampling(reader.getWidth()) > 1) {
+                info = new BrightnessMapCache.ImageInfo(reader.hashFile(), reader.getWidth(), reader.getHeight());
+            } else if ((long) reader.getWidth() * reader.getHeight() > streamingThreshold) {
+                double[][] streamed = streamImageBrightness(reader, 1, colors);
+                info = new BrightnessMapCache.ImageInfo(reader.getContentHash(),
+                        reader.getWidth(), reader.getHeight());
+                brightnessMapCache.put(info.contentHash, resolution, streamed);
+            } else {
+                decoded = new Image(imagePath);
+                info = new BrightnessMapCache.ImageInfo(decoded.contentHash(),
+                        decoded.getWidth(), decoded.getHeight());
+            }
+            brightnessMapCache.putImageInfo(file, info);
+        }
+        this.imageFile = file;
+        this.imageFingerprint = fingerprint;
+        this.imageInfo = info;
+        this.image = decoded;
+        this.lumaTable = null;
+        this.pyramid = null;
+        if (eagerPyramid && (long) info.width * info.height <= streamingThreshold) {
+            try {
+                buildPyramid();
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        }
+    }
+
+    /**
+     * Retrieves the brightness map of the image at the current resolution,
+     * from the cache if possible and otherwise by computing and caching it.
+     * The map may be estimated from a subsampled decode, see {@link #setSubsamplingTolerance(double)}.
      *
      * @return The brightness map as a 2D array of doubles
      */
     private double[][] getImageBrightness() {
-        Image[][] subImages = getSubImages();
-        double[][] brightnessMap = new double[subImages.length][subImages[0].length];
-        for (int i = 0; i < subImages.length; i++) {
-            for (int j = 0; j < subImages[0].length; j++) {
-                brightnessMap[i][j] = getBrightness(subImages[i][j]);
+        int subsampling = getSubsampling();
+        double[][] cached = brightnessMapCache.get(imageInfo.contentHash, resolution, subsampling);
+        if (cached != null && (!colors || colorMap != null)) {
+            return cached;
+        }
+        double[][] computed = computeImageBrightness(subsampling, colors);
+        brightnessMapCache.put(imageInfo.contentHash, resolution, subsampling, computed);
+        return computed;
+    }
+
+    /**
+     * Chooses the decode subsampling factor of the current image at the current resolution.
+     *
+     * @return The subsampling factor, 1 for a full-fidelity decode
+     */
+    private int getSubsampling() {
+        return getSubsampling(imageInfo.width);
+    }
+
+    /**
+     * Chooses the decode subsampling factor of an image of the given width at the current resolution:
+     * the largest factor still leaving the required number of samples per tile axis.
+     *
+     * @param width The width of the image
+     * @return The subsampling factor, 1 for a full-fidelity decode
+     */
+    private int getSubsampling(int width) {
+        if (samplesPerTileAxis == 0) {
+            return 1;
+        }
+        int subImageSize = paddedSize(width) / resolution;
+        return Math.max(1, subImageSize / samplesPerTileAxis);
+    }
+
+    /**
+     * Computes how many samples per tile axis keep the standard error of a tile brightness
+     * within the tolerance, for the worst-case brightness deviation.
+     *
+     * @param tolerance The accepted standard error
+     * @return The number of samples per tile axis
+     */
+    private static int samplesPerTileAxis(double tolerance) {
+        return (int) Math.ceil(MAX_BRIGHTNESS_DEVIATION / tolerance);
+    }
+
+    /**
+     * Checks that the image file is still the one loaded, before reading it again: its cached
+     * content hash and dimensions only describe that version, so maps computed from another one
+     * would be cached under the wrong content.
+     *
+     * @throws IOException If the file was changed or deleted since it was loaded
+     */
+    private void checkImageFileUnchanged() throws IOException {
+        if (!BrightnessMapCache.fingerprint(imageFile).equals(imageFingerprint)) {
+            throw new IOException("Image file changed or deleted since it was loaded: " + imageFile);
+        }
+    }
+
+    /**
+     * Retrieves the decoded image, decoding it first if it was skipped thanks to the cache.
+     *
+     * @return The decoded image
+     * @throws UncheckedIOException If the file was changed, deleted or cannot be decoded
+     */
+    private Image getImage() {
+        if (image == null) {
+            try {
+                checkImageFileUnchanged();
+                image = new Image(imageFile.getPath());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
             }
         }
-        return brightnessMap;
+        return image;
     }
 
     /**
-     * Computes the base-2 logarithm of a given number.
+     * Builds the summed-area table of the image if it was not built yet,
+     * decoding the image first if it was skipped thanks to the cache.
+     * The padding is never materialized, see {@link #sumLumaTableTiles(SummedAreaTable, int)}.
      *
-     * @param num The number to compute the logarithm for
-     * @return The base-2 logarithm of the number
+     * @return The summed-area table of the image
      */
-    private static int log2(int num) {
-        return (int) Math.ceil(Math.log(num) / Math.log(LOG_BASE));
+    private SummedAreaTable getLumaTable() {
+        if (lumaTable == null) {
+            getImage();
+            PipelineStage.Timer timer = PipelineStage.DIVIDE.start();
+            try (timer) {
+                lumaTable = new SummedAreaTable(image, pool, MIN_PIXEL_ROWS_PER_BAND);
+            }
+        }
+        return lumaTable;
     }
 
     /**
-     * Divides the padded image into sub-images based on the resolution.
+     * Computes the brightness map of the image based on the current resolution, and the color map
+     * in the same pass if requested. The map is looked up in the resolution pyramid, built on the
+     * first call, or else each tile is answered from the summed-area table with four lookups,
+     * unless the image is streamed or subsampled, or colors are requested.
      *
-     * @return A 2D array of Image objects representing sub-images
+     * @param subsampling The decode subsampling factor, 1 for a full-fidelity decode
+     * @param withColors  Whether to compute the color map as well
+     * @return The brightness map as a 2D array of doubles
+     */
+    private double[][] computeImageBrightness(int subsampling, boolean withColors) {
+        if ((long) imageInfo.width * imageInfo.height > streamingThreshold || subsampling > 1) {
+            try {
+                checkImageFileUnchanged();
+                return streamImageBrightness(new StripBrightnessReader(imageFile), subsampling, withColors);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        if (withColors) {
+            // decoded before the brightness stage starts, so decoding is timed on its own
+            getImage();
+            PipelineStage.Timer timer = PipelineStage.BRIGHTNESS.start();
+            try (timer) {
+                return sumImageTiles();
+            }
+        }
+        if (pyramid == null) {
+            buildPyramid();
+        }
+        if (pyramid != null && pyramid.holds(resolution)) {
+            PipelineStage.Timer timer = PipelineStage.BRIGHTNESS.start();
+            try (timer) {
+                return toBrightnessMap(pyramid.getLumaSums(resolution));
+            }
+        }
+        SummedAreaTable lumaTable = getLumaTable();
+        PipelineStage.Timer timer = PipelineStage.BRIGHTNESS.start();
+        try (timer) {
+            return toBrightnessMap(sumLumaTableTiles(lumaTable, resolution));
+        }
+    }
+
+    /**
+     * Builds the resolution pyramid of the image from its finest resolution fitting the memory
+     * budget, decoding the image and building its summed-area table first if needed.
+     * The summed-area table is released if the pyramid holds every resolution.
+     * Nothing is built if the pyramid is disabled or even its coarsest level does not fit.
      */
-    private Image[][] getSubImages() {
-        Image paddedImage = padImage();
-        int subImageSize = paddedImage.getWidth() / resolution;
-        return divideToSubImages(paddedImage, subImageSize);
+    private void buildPyramid() {
+        int paddedWidth = paddedSize(imageInfo.width);
+        int paddedHeight = paddedSize(imageInfo.height);
+        int coarsestResolution = Math.max(CHARS_IN_ROW_MINIMUM_VALUE, paddedWidth / paddedHeight);
+        int finestResolution = BrightnessPyramid.finestResolution(paddedWidth, paddedHeight,
+                coarsestResolution, pyramidMaxBytes);
+        if (finestResolution == 0) {
+            return;
+        }
+        SummedAreaTable lumaTable = getLumaTable();
+        PipelineStage.Timer timer = PipelineStage.BRIGHTNESS.start();
+        try (timer) {
+            pyramid = new BrightnessPyramid(sumLumaTableTiles(lumaTable, finestResolution), coarsestResolution);
+        }
+        if (finestResolution == paddedWidth) {
+            this.lumaTable = null;
+        }
     }
 
     /**
-     * Pads the original image to ensure even division for sub-image creation.
+     * Turns the tile luma sums of the image at the current resolution into its brightness map.
      *
-     * @return The padded image
+     * @param lumaSums The fixed-point luma sums of the tiles, padding included
+     * @return The brightness map as a 2D array of doubles
      */
-    private Image padImage() {
-        int newWidth = (int) Math.pow(LOG_BASE, log2(image.getWidth()));
-        int widthPadding = (newWidth - image.getWidth()) / 2;
-        int newHeight = (int) Math.pow(LOG_BASE, log2(image.getHeight()));
-        int heightPadding = (newHeight - image.getHeight()) / 2;
-        Color[][] paddedPixelArray = new Color[newHeight][newWidth];
-        for (int i = 0; i < newHeight; i++) {
-            for (int j = 0; j < newWidth; j++) {
-                if (
-                        i < heightPadding ||
-                                i >= newHeight - heightPadding ||
-                                j < widthPadding ||
-                                j >= newWidth - widthPadding
-                ) {
-                    paddedPixelArray[i][j] = new Color(MAX_RGB_VALUE, MAX_RGB_VALUE, MAX_RGB_VALUE);
-                } else {
-                    paddedPixelArray[i][j] = image.getPixel(i - heightPadding, j - widthPadding);
+    private double[][] toBrightnessMap(long[][] lumaSums) {
+        int subImageSize = paddedSize(imageInfo.width) / resolution;
+        double tileMaxLuma = MAX_LUMA * subImageSize * subImageSize;
+        double[][] brightnessMap = new double[lumaSums.length][resolution];
+        RowBands.run(pool, brightnessMap.length, MIN_TILE_ROWS_PER_BAND, (fromRow, toRow) -> {
+            for (int i = fromRow; i < toRow; i++) {
+                for (int j = 0; j < resolution; j++) {
+                    brightnessMap[i][j] = lumaSums[i][j] / tileMaxLuma;
                 }
             }
-        }
-        return new Image(paddedPixelArray, newWidth, newHeight);
+        });
+        return brightnessMap;
     }
 
     /**
-     * Divides the padded image into sub-images based on the specified sub-image size.
+     * Computes the tile luma sums of the image at a resolution from the summed-area table of the
+     * unpadded image, as if it were padded with white to power-of-two dimensions.
+     * A tile gets the luma of its image pixels from four lookups and adds the white luma of its
+     * padding pixels analytically; a tile entirely in the padding is white without any lookup.
+     * The luma sums are the exact integers a padded raster would give.
      *
-     * @param paddedImage  The padded image
-     * @param subImageSize The size of each sub-image
-     * @return A 2D array of Image objects representing sub-images
+     * @param lumaTable  The summed-area table of the image
+     * @param resolution The resolution
+     * @return The fixed-point luma sums of the tiles, [tile rows][tile columns]
      */
-    private Image[][] divideToSubImages(Image paddedImage, int subImageSize) {
-        Image[][] subImages = new Image[paddedImage.getHeight() / subImageSize][resolution];
-        for (int i = 0; i < (paddedImage.getHeight() / subImageSize); i++) {
-            for (int j = 0; j < resolution; j++) {
-                Color[][] subImagePixels = new Color[subImageSize][subImageSize];
-                for (int k = 0; k < subImageSize; k++) {
-                    for (int l = 0; l < subImageSize; l++) {
-                        subImagePixels[k][l] =
-                                paddedImage.getPixel(i * subImageSize + k, j * subImageSize + l);
+    private long[][] sumLumaTableTiles(SummedAreaTable lumaTable, int resolution) {
+        int width = lumaTable.getWidth();
+        int height = lumaTable.getHeight();
+        int paddedHeight = paddedSize(height);
+        int subImageSize = paddedSize(width) / resolution;
+        int widthPadding = (paddedSize(width) - width) / 2;
+        int heightPadding = (paddedHeight - height) / 2;
+        long[][] lumaSums = new long[paddedHeight / subImageSize][resolution];
+        long tilePixels = (long) subImageSize * subImageSize;
+        long whiteLuma = luma(WHITE_RGB);
+        RowBands.run(pool, lumaSums.length, MIN_TILE_ROWS_PER_BAND, (fromRow, toRow) -> {
+            for (int i = fromRow; i < toRow; i++) {
+                int top = i * subImageSize - heightPadding;
+                int imageRows = overlap(top, subImageSize, height);
+                for (int j = 0; j < lumaSums[i].length; j++) {
+                    int left = j * subImageSize - widthPadding;
+                    int imageColumns = overlap(left, subImageSize, width);
+                    if (imageRows == 0 || imageColumns == 0) {
+                        lumaSums[i][j] = tilePixels * whiteLuma;
+                        continue;
                     }
+                    long imageLuma = lumaTable.sum(Math.max(top, 0), Math.max(left, 0),
+                            imageRows, imageColumns);
+                    long paddingPixels = tilePixels - (long) imageRows * imageColumns;
+                    lumaSums[i][j] = imageLuma + paddingPixels * whiteLuma;
                 }
-                subImages[i][j] = new Image(subImagePixels, subImageSize, subImageSize);
             }
+        });
+        return lumaSums;
+    }
+
+    /**
+     * Computes the brightness map of the image at the current resolution by streaming it in strips,
+     * and the color map in the same pass if requested.
+     *
+     * @param reader      The strip reader of the image
+     * @param subsampling The decode subsampling factor, 1 for a full-fidelity decode
+     * @param withColors  Whether to compute the color map as well
+     * @return The brightness map as a 2D array of doubles
+     * @throws IOException If there is an error reading the image file
+     */
+    private double[][] streamImageBrightness(StripBrightnessReader reader, int subsampling,
+                                             boolean withColors) throws IOException {
+        PipelineStage.Timer timer = PipelineStage.BRIGHTNESS.start();
+        try (timer) {
+            TileSums tileSums = newTileSums(reader.getWidth(), reader.getHeight(), withColors);
+            reader.accumulate(tileSums, subsampling);
+            return averageTiles(tileSums, reader.getWidth(), reader.getHeight(), subsampling);
         }
-        return subImages;
     }
 
     /**
-     * Computes the brightness of an image.
+     * Computes the brightness map and the color map of the decoded image at the current resolution
+     * in a single pass over its pixels, decoding the image first if needed. Rows are summed in place
+     * in the raster of the image, without copying them.
      *
-     * @param image The image for which brightness is to be computed
-     * @return The brightness value of the image (normalized to [0, 1])
+     * @return The brightness map as a 2D array of doubles
      */
-    private static double getBrightness(Image image) {
-        double greyPixelSum = 0;
-        for (int i = 0; i < image.getHeight(); i++) {
-            for (int j = 0; j < image.getWidth(); j++) {
-                Color color = image.getPixel(i, j);
-                greyPixelSum += color.getRed() * RED_FACTOR +
-                        color.getGreen() * GREEN_FACTOR +
-                        color.getBlue() * BLUE_FACTOR;
+    private double[][] sumImageTiles() {
+        Image decoded = getImage();
+        TileSums tileSums = newTileSums(decoded.getWidth(), decoded.getHeight(), true);
+        RowBands.run(pool, tileSums.luma.length, MIN_TILE_ROWS_PER_BAND, (fromRow, toRow) -> {
+            int firstRow = Math.max(0, fromRow * tileSums.tileSize - tileSums.heightPadding);
+            int endRow = Math.min(decoded.getHeight(), toRow * tileSums.tileSize - tileSums.heightPadding);
+            for (int x = firstRow; x < endRow; x++) {
+                tileSums.addRow(x, decoded.raster(), decoded.rowStart(x), decoded.getWidth(), 1);
             }
+        });
+        return averageTiles(tileSums, decoded.getWidth(), decoded.getHeight(), 1);
+    }
+
+    /**
+     * Creates empty tile sums for an image of the given size at the current resolution.
+     *
+     * @param width      The width of the image
+     * @param height     The height of the image
+     * @param withColors Whether to sum the color channels as well
+     * @return The tile sums
+     */
+    private TileSums newTileSums(int width, int height, boolean withColors) {
+        int paddedWidth = paddedSize(width);
+        int paddedHeight = paddedSize(height);
+        int subImageSize = paddedWidth / resolution;
+        return new TileSums(paddedHeight / subImageSize, resolution, subImageSize,
+                (paddedHeight - height) / 2, (paddedWidth - width) / 2, withColors);
+    }
+
+    /**
+     * Turns tile sums into the brightness map, and into the color map if colors were summed.
+     * Tiles get their image pixels from the sums, and white for their padding pixels.
+     * When subsampled, the image pixels of a tile are estimated by the mean of its samples
+     * (image pixels of an edge tile that got no sample at all count as white, like its padding).
+     *
+     * @param tileSums    The tile sums of the image pixels
+     * @param width       The width of the image
+     * @param height      The height of the image
+     * @param subsampling The subsampling factor the sums were accumulated with
+     * @return The brightness map as a 2D array of doubles
+     */
+    private double[][] averageTiles(TileSums tileSums, int width, int height, int subsampling) {
+        int subImageSize = tileSums.tileSize;
+        long[][] lumaSums = tileSums.luma;
+        double[][] brightnessMap = new double[lumaSums.length][resolution];
+        int[][] colors = tileSums.hasColors() ? new int[lumaSums.length][resolution] : null;
+        long tilePixels = (long) subImageSize * subImageSize;
+        double tileMaxLuma = MAX_LUMA * tilePixels;
+        long whiteLuma = luma(WHITE_RGB);
+        for (int i = 0; i < lumaSums.length; i++) {
+            int top = i * subImageSize - tileSums.heightPadding;
+            int imageRows = overlap(top, subImageSize, height);
+            int sampledRows = sampledCount(top, subImageSize, height, subsampling);
+            for (int j = 0; j < resolution; j++) {
+                int left = j * subImageSize - tileSums.widthPadding;
+                long imagePixels = (long) imageRows * overlap(left, subImageSize, width);
+                long samples = (long) sampledRows * sampledCount(left, subImageSize, width, subsampling);
+                long paddingPixels = tilePixels - imagePixels;
+                if (samples == imagePixels) {
+                    brightnessMap[i][j] = (lumaSums[i][j] + paddingPixels * whiteLuma) / tileMaxLuma;
+                } else if (samples == 0) {
+                    brightnessMap[i][j] = 1;
+                } else {
+                    double imageLuma = (double) lumaSums[i][j] * imagePixels / samples;
+                    brightnessMap[i][j] = (imageLuma + paddingPixels * whiteLuma) / tileMaxLuma;
+                }
+                if (colors != null && samples == 0) {
+                    colors[i][j] = WHITE_RGB;
+                } else if (colors != null) {
+                    int red = averageChannel(tileSums.red[i][j], samples, imagePixels, tilePixels);
+                    int green = averageChannel(tileSums.green[i][j], samples, imagePixels, tilePixels);
+                    int blue = averageChannel(tileSums.blue[i][j], samples, imagePixels, tilePixels);
+                    colors[i][j] = red << RED_SHIFT | green << GREEN_SHIFT | blue;
+                }
+            }
+        }
+        if (colors != null) {
+            colorMap = colors;
         }
-        double brightness = greyPixelSum / (image.getHeight() * image.getWidth());
-        return brightness / MAX_RGB_VALUE;
+        return brightnessMap;
+    }
+
+    /**
+     * Averages a color channel over a tile whose padding pixels are white, rounding to the nearest value.
+     *
+     * @param sampleSum   The channel sum of the sampled image pixels of the tile
+     * @param samples     The number of sampled image pixels, not 0
+     * @param imagePixels The number of image pixels of the tile
+     * @param tilePixels  The number of pixels of the tile
+     * @return The average channel value, in [0, MAX_RGB_VALUE]
+     */
+    private static int averageChannel(long sampleSum, long samples, long imagePixels, long tilePixels) {
+        double sum = (double) sampleSum * imagePixels / samples +
+                (double) (tilePixels - imagePixels) * MAX_RGB_VALUE;
+        return (int) Math.min(MAX_RGB_VALUE, Math.round(sum / tilePixels));
+    }
+
+    /**
+     * Computes the length of the overlap of a tile span with the image span [0, imageLength).
+     *
+     * @param start       The start of the tile span, in image coordinates
+     * @param length      The length of the tile span
+     * @param imageLength The length of the image span
+     * @return The number of image pixels inside the tile span
+     */
+    private static int overlap(int start, int length, int imageLength) {
+        return Math.max(0, Math.min(start + length, imageLength) - Math.max(start, 0));
+    }
+
+    /**
+     * Checks that a resolution is valid for an image of the given padded size.
+     *
+     * @param resolution   The resolution
+     * @param paddedWidth  The padded width of the image
+     * @param paddedHeight The padded height of the image
+     * @throws ResolutionExceedingBoundariesException If the resolution is invalid
+     */
+    static void checkResolution(int resolution, int paddedWidth, int paddedHeight)
+            throws ResolutionExceedingBoundariesException {
+        int minCharsInRow = Math.max(CHARS_IN_ROW_MINIMUM_VALUE, paddedWidth / paddedHeight);
+
+        if (resolution < minCharsInRow || resolution > paddedWidth) {
+            throw new ResolutionExceedingBoundariesException();
+        }
+    }
+
+    /**
+     * Counts the sampled image pixels of a tile span, with the image span being [0, imageLength).
+     *
+     * @param start       The start of the tile span, in image coordinates
+     * @param length      The length of the tile span
+     * @param imageLength The length of the image span
+     * @param subsampling The subsampling factor
+     * @return The number of sampled image pixels inside the tile span
+     */
+    private static int sampledCount(int start, int length, int imageLength, int subsampling) {
+        return StripBrightnessReader.sampledCount(Math.max(start, 0), Math.min(start + length, imageLength),
+                subsampling);
+    }
+
+    /**
+     * Computes the size of a dimension once padded to the next power of two.
+     *
+     * @param size The size of the dimension
+     * @return The padded size
+     */
+    static int paddedSize(int size) {
+        return (int) Math.pow(LOG_BASE, log2(size));
+    }
+
+    /**
+     * Computes the base-2 logarithm of a given number.
+     *
+     * @param num The number to compute the logarithm for
+     * @return The base-2 logarithm of the number
+     */
+    private static int log2(int num) {
+        return (int) Math.ceil(Math.log(num) / Math.log(LOG_BASE));
+    }
+
+    /**
+     * Computes the fixed-point luma of a packed RGB pixel.
+     * The result is the weighted channel sum scaled by LUMA_SCALE, in [0, MAX_LUMA].
+     *
+     * @param rgb The packed RGB value of the pixel
+     * @return The fixed-point luma of the pixel
+     */
+    static int luma(int rgb) {
+        return Image.red(rgb) * RED_FACTOR + Image.green(rgb) * GREEN_FACTOR + Image.blue(rgb) * BLUE_FACTOR;
     }
 
 }
@@ -0,0 +1,99 @@
+package ascii_art;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of latencies with power-of-two microsecond buckets, safe for concurrent recording
+ * without locks. Percentiles are reported as the upper bound of the bucket they fall into,
+ * capped by the longest latency, so they overestimate by less than a factor of two.
+ */
+public class LatencyHistogram {
+    //number of buckets; the last one also holds every longer latency.
+    private static final int BUCKETS = 40;
+
+    //nanoseconds in a microsecond.
+    private static final long NANOS_IN_MICRO = 1000L;
+
+    //microseconds in a millisecond.
+    private static final double MICROS_IN_MILLI = 1000.0;
+
+    //bucket k counts latencies in [2^(k - 1), 2^k) microseconds, bucket 0 those under a microsecond.
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    //number of recorded latencies.
+    private final LongAdder count = new LongAdder();
+
+    //sum of the recorded latencies, in nanoseconds.
+    private final LongAdder totalNanos = new LongAdder();
+
+    //longest recorded latency, in nanoseconds.
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    /**
+     * Records a latency.
+     *
+     * @param nanos the latency, in nanoseconds
+     */
+    public void record(long nanos) {
+        long micros = Math.max(0, nanos) / NANOS_IN_MICRO;
+        int bucket = Math.min(BUCKETS - 1, Long.SIZE - Long.numberOfLeadingZeros(micros));
+        counts.incrementAndGet(bucket);
+        count.increment();
+        totalNanos.add(nanos);
+        maxNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    /**
+     * Returns the number of recorded latencies.
+     *
+     * @return the count
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * Returns the mean recorded latency.
+     *
+     * @return the mean latency in milliseconds, 0 if none was recorded
+     */
+    public double getMeanMillis() {
+        long recorded = count.sum();
+        return recorded == 0 ? 0 : totalNanos.sum() / (double) recorded / NANOS_IN_MICRO / MICROS_IN_MILLI;
+    }
+
+    /**
+     * Returns the longest recorded latency.
+     *
+     * @return the maximal latency in milliseconds
+     */
+    public double getMaxMillis() {
+        return maxNanos.get() / (double) NANOS_IN_MICRO / MICROS_IN_MILLI;
+    }
+
+    /**
+     * Returns an upper bound of the given percentile of the recorded latencies.
+     *
+     * @param percentile the percentile, in (0, 100]
+     * @return the upper bound of the bucket holding the percentile, in milliseconds, 0 if none was recorded
+     */
+    public double getPercentileMillis(double percentile) {
+        long[] snapshot = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        long rank = (long) Math.ceil(total * percentile / 100);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank && seen > 0) {
+                return i == BUCKETS - 1 ? getMaxMillis() : Math.min(getMaxMillis(), (1L << i) / MICROS_IN_MILLI);
+            }
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,89 @@
+package image;
+
+/**
+ * Computes the fixed-point luma (see {@link ImageManager#luma(int)}) of runs of packed RGB pixels,
+ * the innermost loop of every brightness computation. This scalar kernel is the fallback; when the
+ * vector kernel was built (with the "vector" Maven profile) and the jdk.incubator.vector module is
+ * available at runtime (e.g. launched with "--add-modules jdk.incubator.vector"), {@link #get()}
+ * returns a kernel processing whole vector lanes at a time instead. Luma is integer arithmetic, so both kernels give exactly the same
+ * results: brightness maps, and therefore the chosen characters, never depend on the kernel.
+ * Setting the system property "image.scalarLuma" to true forces the scalar kernel.
+ */
+class LumaKernel {
+    // name of the vector API module.
+    private static final String VECTOR_MODULE = "jdk.incubator.vector";
+
+    // name of the kernel class using the vector API.
+    private static final String VECTOR_KERNEL_CLASS = "image.VectorLumaKernel";
+
+    // system property forcing the scalar kernel.
+    private static final String SCALAR_PROPERTY = "image.scalarLuma";
+
+    // the kernel used by the image package.
+    private static final LumaKernel INSTANCE = create();
+
+    /**
+     * Returns the fastest kernel available at runtime.
+     *
+     * @return the kernel, shared and safe for use from multiple threads
+     */
+    static LumaKernel get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Sums the luma of a run of pixels.
+     *
+     * @param pixels the packed RGB pixels
+     * @param from   the index of the first pixel
+     * @param to     the index after the last pixel
+     * @return the fixed-point luma sum
+     */
+    long sum(int[] pixels, int from, int to) {
+        long sum = 0;
+        for (int i = from; i < to; i++) {
+            sum += ImageManager.luma(pixels[i]);
+        }
+        return sum;
+    }
+
+    /**
+     * Computes the luma of every pixel of a run.
+     *
+     * @param pixels  the packed RGB pixels
+     * @param from    the index of the first pixel
+     * @param to      the index after the last pixel
+     * @param dest    the array receiving the fixed-point luma values
+     * @param destPos the index in dest of the luma of the first pixel
+     */
+    void luma(int[] pixels, int from, int to, int[] dest, int destPos) {
+        for (int i = from; i < to; i++) {
+            dest[destPos + i - from] = ImageManager.luma(pixels[i]);
+        }
+    }
+
+    /**
+     * Tells the name of the kernel, for diagnostics.
+     *
+     * @return the name of the kernel
+     */
+    String getName() {
+        return "scalar";
+    }
+
+    /**
+     * Creates the vector kernel if its module is available and not disabled, the scalar one otherwise.
+     *
+     * @return the kernel
+     */
+    private static LumaKernel create() {
+        if (Boolean.getBoolean(SCALAR_PROPERTY) || ModuleLayer.boot().findModule(VECTOR_MODULE).isEmpty()) {
+            return new LumaKernel();
+        }
+        try {
+            return (LumaKernel) Class.forName(VECTOR_KERNEL_CLASS).getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return new LumaKernel();
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package ascii_art;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A stage of the conversion pipeline, timed every time it runs. Each run is recorded in the
+ * cumulative in-process statistics of its stage, since startup, and emitted as a JDK Flight
+ * Recorder event named "ascii_art.PipelineStage" when a recording enables it.
+ * Allocation is the number of bytes allocated by the thread running the stage, so work the stage
+ * hands over to pool threads is timed but not counted; it is 0 where the JVM cannot measure it.
+ * Stages are safe to time from multiple threads at once.
+ */
+public enum PipelineStage {
+    /**
+     * Decoding an image file into a raster.
+     */
+    DECODE("decode"),
+
+    /**
+     * Dividing the image into sub-images, by building its summed-area table of luma.
+     * The power-of-two padding is virtual, so it has no stage of its own.
+     */
+    DIVIDE("divide"),
+
+    /**
+     * Computing the brightness of every sub-image, including streamed and subsampled passes that
+     * decode the image as they go.
+     */
+    BRIGHTNESS("brightness"),
+
+    /**
+     * Rendering a character glyph to a boolean raster.
+     */
+    GLYPH("glyph"),
+
+    /**
+     * Matching the brightness of every sub-image to a character.
+     */
+    MATCH("match"),
+
+    /**
+     * Writing the ASCII art to its output.
+     */
+    OUTPUT("output");
+
+    //per-thread allocation counters, or null if the JVM does not provide them.
+    private static final com.sun.management.ThreadMXBean ALLOCATION_BEAN = allocationBean();
+
+    //name of the stage in reports.
+    private final String label;
+
+    //latencies of the runs of the stage.
+    private final LatencyHistogram latencies = new LatencyHistogram();
+
+    //bytes allocated by the runs of the stage.
+    private final LongAdder allocatedBytes = new LongAdder();
+
+    /**
+     * Constructs a stage.
+     *
+     * @param label the name of the stage in reports
+     */
+    PipelineStage(String label) {
+        this.label = label;
+    }
+
+    /**
+     * Starts timing a run of the stage on the calling thread, to be closed when the run ends,
+     * typically by a try-with-resources statement.
+     *
+     * @return the timer of the run
+     */
+    public Timer start() {
+        return new Timer(this);
+    }
+
+    /**
+     * Returns the name of the stage in reports.
+     *
+     * @return the label
+     */
+    public String getLabel() {
+        return label;
+    }
+
+    /**
+     * Returns the latencies of the runs of the stage since startup.
+     *
+     * @return the latency histogram
+     */
+    public LatencyHistogram getLatencies() {
+        return latencies;
+    }
+
+    /**
+     * Returns the number of bytes allocated by the runs of the stage since startup.
+     *
+     * @return the allocated bytes
+     */
+    public long getAllocatedBytes() {
+        return allocatedBytes.sum();
+    }
+
+    /**
+     * Returns the per-thread allocation counters of the JVM, enabling them if needed.
+     *
+     * @return the thread bean, or null if allocation cannot be measured
+     */
+    private static com.sun.management.ThreadMXBean allocationBean() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+            return null;
+        }
+        com.sun.management.ThreadMXBean allocationBean = (com.sun.management.ThreadMXBean) bean;
+        if (!allocationBean.isThreadAllocatedMemorySupported()) {
+            return null;
+        }
+        allocationBean.setThreadAllocatedMemoryEnabled(true);
+        return allocationBean;
+    }
+
+    /**
+     * Returns the number of bytes allocated by the calling thread so far.
+     *
+     * @return the allocated bytes, negative if unknown
+     */
+    private static long currentThreadAllocatedBytes() {
+        return ALLOCATION_BEAN == null ? -1 : ALLOCATION_BEAN.getCurrentThreadAllocatedBytes();
+    }
+
+    /**
+     * A run of a stage being timed, not to be shared between threads.
+     */
+    public static final class Timer implements AutoCloseable {
+        //the timed stage.
+        private final PipelineStage stage;
+
+        //the flight recorder event of the run.
+        private final StageEvent event = new StageEvent();
+
+        //start of the run, in nanoseconds.
+        private final long startNanos;
+
+        //bytes allocated by the thread before the run, negative if unknown.
+        private final long startAllocatedBytes;
+
+        /**
+         * Starts timing a run of a stage.
+         *
+         * @param stage the timed stage
+         */
+        private Timer(PipelineStage stage) {
+            this.stage = stage;
+            event.begin();
+            startAllocatedBytes = currentThreadAllocatedBytes();
+            startNanos = System.nanoTime();
+        }
+
+        /**
+         * Ends the run, recording it in the statistics of its stage and emitting its event.
+         */
+        @Override
+        public void close() {
+            long nanos = System.nanoTime() - startNanos;
+            long endAllocatedBytes = currentThreadAllocatedBytes();
+            long allocated = startAllocatedBytes < 0 || endAllocatedBytes < 0 ?
+                    0 : endAllocatedBytes - startAllocatedBytes;
+            stage.latencies.record(nanos);
+            stage.allocatedBytes.add(allocated);
+            event.end();
+            if (event.shouldCommit()) {
+                event.stage = stage.label;
+                event.allocatedBytes = allocated;
+                event.commit();
+            }
+        }
+    }
+
+    /**
+     * The flight recorder event of a run of a stage.
+     */
+    @Name("ascii_art.PipelineStage")
+    @Label("Pipeline Stage")
+    @Category("ASCII Art")
+    @Description("A run of a stage of the image to ASCII art conversion")
+    @StackTrace(false)
+    static final class StageEvent extends Event {
+        //the name of the stage.
+        @Label("Stage")
+        String stage;
+
+        //bytes allocated by the thread running the stage.
+        @Label("Allocated")
+        @DataAmount
+        long allocatedBytes;
+    }
+}
@@ -0,0 +1,78 @@
+package image;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Runs a computation over a range of rows, split into bands executed in parallel on a fork/join pool.
+ * Bands never overlap, so a computation writing only inside its band gives the same result
+ * whatever the pool and the scheduling.
+ */
+class RowBands {
+    /**
+     * A computation over a band of rows.
+     */
+    interface Body {
+        /**
+         * Processes the rows of a band.
+         *
+         * @param fromRow the first row of the band
+         * @param toRow   the row after the last row of the band
+         */
+        void run(int fromRow, int toRow);
+    }
+
+    /**
+     * Runs the body over the given rows, sequentially if the pool is null.
+     *
+     * @param pool           the fork/join pool, or null to run sequentially
+     * @param rows           the number of rows
+     * @param minRowsPerBand the number of rows below which a band is not split further
+     * @param body           the computation
+     */
+    static void run(ForkJoinPool pool, int rows, int minRowsPerBand, Body body) {
+        if (pool == null || rows <= minRowsPerBand) {
+            body.run(0, rows);
+        } else {
+            pool.invoke(new BandTask(0, rows, Math.max(1, minRowsPerBand), body));
+        }
+    }
+
+    /**
+     * A fork/join task halving its band of rows until it reaches the minimal band size.
+     */
+    private static class BandTask extends RecursiveAction {
+        //version of the serialized form, inherited from ForkJoinTask.
+        private static final long serialVersionUID = 1L;
+
+        //the first row of the band.
+        private final int fromRow;
+
+        //the row after the last row of the band.
+        private final int toRow;
+
+        //the number of rows below which the band is not split further.
+        private final int minRowsPerBand;
+
+        //the computation.
+        private final Body body;
+
+        BandTask(int fromRow, int toRow, int minRowsPerBand, Body body) {
+            this.fromRow = fromRow;
+            this.toRow = toRow;
+            this.minRowsPerBand = minRowsPerBand;
+            this.body = body;
+        }
+
+        @Override
+        protected void compute() {
+            if (toRow - fromRow <= minRowsPerBand) {
+                body.run(fromRow, toRow);
+                return;
+            }
+            int middle = (fromRow + toRow) >>> 1;
+            invokeAll(new BandTask(fromRow, middle, minRowsPerBand, body),
+                    new BandTask(middle, toRow, minRowsPerBand, body));
+        }
+    }
+}
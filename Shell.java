@@ -3,11 +3,23 @@ package ascii_art;
 import ascii_output.AsciiOutput;
 import ascii_output.ConsoleAsciiOutput;
 import ascii_output.HtmlAsciiOutput;
+import ascii_output.TerminalDiffRenderer;
+import image.FrameSequence;
 import image.ImageManager;
 import image_char_matching.SubImgCharMatcher;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 
 /**
@@ -46,12 +58,20 @@ public class Shell {
     private static final String RESOLUTION_EXCEEDING_BOUNDARIES = "Did not change resolution due to " +
             "exceeding boundaries.";
 
+    //resolution image file error message.
+    private static final String RESOLUTION_IMAGE_ERROR_MESSAGE = "Did not change resolution due to " +
+            "problem with image file.";
+
     //resolution set successfully message.
     private static final String RESOLUTION_SET_SUCCESSFULLY = "Resolution set to %d.";
 
     //image path error message.
     private static final String IMAGE_PATH_ERROR_MESSAGE = "Did not execute due to problem with image file.";
 
+    //image resolution error message.
+    private static final String IMAGE_RESOLUTION_ERROR_MESSAGE = "Did not change image due to the resolution " +
+            "exceeding its boundaries.";
+
     //output incorrect format.
     private static final String OUTPUT_INCORRECT_FORMAT = "Did not change output method due to incorrect " +
             "format.";
@@ -63,6 +83,9 @@ public class Shell {
     //html output.
     private static final String HTML_OUTPUT = "html";
 
+    //gzip compressed html output.
+    private static final String GZIP_HTML_OUTPUT = "html.gz";
+
     //default html output path.
     private static final String DEFAULT_HTML_OUTPUT_PATH = "out.html";
 
@@ -111,6 +134,73 @@ public class Shell {
     //res command.
     private static final String RES_COMMAND = "res";
 
+    //color command.
+    private static final String COLOR_COMMAND = "color";
+
+    //color on argument.
+    private static final String COLOR_ON = "on";
+
+    //color off argument.
+    private static final String COLOR_OFF = "off";
+
+    //color command length.
+    private static final int COLOR_COMMAND_LENGTH = 2;
+
+    //incorrect color format error message.
+    private static final String INCORRECT_COLOR_FORMAT_ERROR_MESSAGE = "Did not change color mode due to " +
+            "incorrect format.";
+
+    //watch command.
+    private static final String WATCH_COMMAND = "watch";
+
+    //watch started message.
+    private static final String WATCH_STARTED_MESSAGE = "Watching %s, press Enter to stop.";
+
+    //quiet period collecting the file events of a single save, in milliseconds.
+    private static final long WATCH_DEBOUNCE_MILLIS = 100;
+
+    //watch reload error message format, followed by the error.
+    private static final String WATCH_RELOAD_ERROR_FORMAT = "Did not reload the image due to %s";
+
+    //stats command.
+    private static final String STATS_COMMAND = "stats";
+
+    //animate command.
+    private static final String ANIMATE_COMMAND = "animate";
+
+    //animate command length.
+    private static final int ANIMATE_COMMAND_LENGTH = 2;
+
+    //incorrect animate format error message.
+    private static final String INCORRECT_ANIMATE_FORMAT_ERROR_MESSAGE = "Did not animate due to incorrect " +
+            "format.";
+
+    //frames resolution error message.
+    private static final String FRAMES_RESOLUTION_ERROR_MESSAGE = "Did not animate due to the resolution " +
+            "exceeding the frame boundaries.";
+
+    //time each animation frame is displayed, in milliseconds.
+    private static final long FRAME_INTERVAL_MILLIS = 100;
+
+    //header of the stats table.
+    private static final String STATS_HEADER = String.format("%-10s %8s %10s %10s %10s %10s %10s %12s",
+            "stage", "count", "mean ms", "p50 ms", "p90 ms", "p99 ms", "max ms", "alloc KB/op");
+
+    //row of the stats table.
+    private static final String STATS_ROW = "%-10s %8d %10.3f %10.3f %10.3f %10.3f %10.3f %12.1f";
+
+    //median percentile.
+    private static final double P50 = 50;
+
+    //90th percentile.
+    private static final double P90 = 90;
+
+    //99th percentile.
+    private static final double P99 = 99;
+
+    //bytes in a kilobyte.
+    private static final double BYTES_IN_KB = 1024.0;
+
     //space char.
     private static final char SPACE_CHAR = ' ';
 
@@ -135,6 +225,12 @@ public class Shell {
     //resolution multiply factor.
     private static final int RESOLUTION_MUL_FACTOR = 2;
 
+    //batch mode argument.
+    private static final String BATCH_ARGUMENT = "batch";
+
+    //server mode argument.
+    private static final String SERVER_ARGUMENT = "server";
+
     // ImageManager field.
     private final ImageManager imageManager;
 
@@ -144,6 +240,24 @@ public class Shell {
     //ascii output field.
     private AsciiOutput asciiOutput;
 
+    //whether the ascii art is output in the colors of its tiles.
+    private boolean colors;
+
+    //path of the current image.
+    private String imagePath;
+
+    //last rendered ascii art, reused while its inputs are unchanged.
+    private char[][] renderedAsciiArt;
+
+    //brightness map the last ascii art was rendered from.
+    private double[][] renderedBrightnessMap;
+
+    //image manager version of the rendered brightness map.
+    private long renderedImageVersion = -1;
+
+    //charset version of the rendered ascii art.
+    private long renderedCharsetVersion = -1;
+
 
     /**
      * Constructs a Shell object, initializing the ASCII art algorithm and output method.
@@ -151,8 +265,19 @@ public class Shell {
      * @throws IOException If there is an error with the default image path
      */
     public Shell() throws IOException {
+        this(DEFAULT_IMAGE_PATH);
+    }
+
+    /**
+     * Constructs a Shell object starting from the given image instead of the default one.
+     *
+     * @param imagePath The path to the initial image
+     * @throws IOException If there is an error with the initial image path
+     */
+    Shell(String imagePath) throws IOException {
         try {
-            this.imageManager = new ImageManager(DEFAULT_IMAGE_PATH, DEFAULT_RESOLUTION);
+            this.imageManager = new ImageManager(imagePath, DEFAULT_RESOLUTION);
+            this.imagePath = imagePath;
             this.subImgCharMatcher = new SubImgCharMatcher(DEFAULT_CHARSET);
             this.asciiOutput = new ConsoleAsciiOutput();
         } catch (IOException e) {
@@ -162,8 +287,19 @@ public class Shell {
 
     /**
      * The main method to start the shell and handle user commands.
+     * Started with "batch" arguments, converts a directory of images without interaction instead,
+     * see {@link BatchConverter#main(String[])}; started with "server" arguments, serves conversions
+     * over HTTP instead, see {@link ConversionServer#main(String[])}.
      */
     public static void main(String[] args) {
+        if (args.length > 0 && args[0].equals(BATCH_ARGUMENT)) {
+            BatchConverter.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 0 && args[0].equals(SERVER_ARGUMENT)) {
+            ConversionServer.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
         try {
             Shell shell = new Shell();
             shell.run();
@@ -179,37 +315,58 @@ public class Shell {
         System.out.print(COMMAND_START_STRING);
         String userInput = KeyboardInput.readLine();
         while (!userInput.equals(EXIT_COMMAND)) {
-            String[] commandArguments = userInput.split(" ");
-            switch (commandArguments[0]) {
-                case CHARS_COMMAND:
-                    runCharsCommand();
-                    break;
-                case ADD_COMMAND:
-                    runAddCommand(commandArguments);
-                    break;
-                case REMOVE_COMMAND:
-                    runRemoveCommand(commandArguments);
-                    break;
-                case ASCII_ART_COMMAND:
-                    runAsciiArtCommand();
-                    break;
-                case RES_COMMAND:
-                    runResCommand(commandArguments);
-                    break;
-                case IMAGE_COMMAND:
-                    runImageCommand(commandArguments);
-                    break;
-                case OUTPUT_COMMAND:
-                    runOutputCommand(commandArguments);
-                    break;
-                default:
-                    System.out.println(INCORRECT_COMMAND_ERROR_MESSAGE);
-            }
+            runCommand(userInput);
             System.out.print(COMMAND_START_STRING);
             userInput = KeyboardInput.readLine();
         }
     }
 
+    /**
+     * Executes a single user command.
+     *
+     * @param userInput The command line entered by the user
+     */
+    void runCommand(String userInput) {
+        String[] commandArguments = userInput.split(" ");
+        switch (commandArguments[0]) {
+            case CHARS_COMMAND:
+                runCharsCommand();
+                break;
+            case ADD_COMMAND:
+                runAddCommand(commandArguments);
+                break;
+            case REMOVE_COMMAND:
+                runRemoveCommand(commandArguments);
+                break;
+            case ASCII_ART_COMMAND:
+                runAsciiArtCommand();
+                break;
+            case RES_COMMAND:
+                runResCommand(commandArguments);
+                break;
+            case IMAGE_COMMAND:
+                runImageCommand(commandArguments);
+                break;
+            case OUTPUT_COMMAND:
+                runOutputCommand(commandArguments);
+                break;
+            case COLOR_COMMAND:
+                runColorCommand(commandArguments);
+                break;
+            case WATCH_COMMAND:
+                runWatchCommand();
+                break;
+            case STATS_COMMAND:
+                runStatsCommand();
+                break;
+            case ANIMATE_COMMAND:
+                runAnimateCommand(commandArguments);
+                break;
+            default:
+                System.out.println(INCORRECT_COMMAND_ERROR_MESSAGE);
+        }
+    }
+
     /**
      * Executes the 'chars' command, displaying the current character set used for ASCII art generation.
      */
@@ -298,6 +455,8 @@ public class Shell {
                 System.out.println(String.format(RESOLUTION_SET_SUCCESSFULLY, newResolution));
             } catch (ResolutionExceedingBoundariesException e) {
                 System.out.println(RESOLUTION_EXCEEDING_BOUNDARIES);
+            } catch (UncheckedIOException e) {
+                System.out.println(RESOLUTION_IMAGE_ERROR_MESSAGE);
             }
         } else {
             System.out.println(INCORRECT_RES_FORMAT_ERROR_MESSAGE);
@@ -312,13 +471,17 @@ public class Shell {
     private void runImageCommand(String[] commandArguments) {
         try {
             imageManager.setImage(commandArguments[1]);
+            imagePath = commandArguments[1];
         } catch (IOException e) {
             System.out.println(IMAGE_PATH_ERROR_MESSAGE);
+        } catch (ResolutionExceedingBoundariesException e) {
+            System.out.println(IMAGE_RESOLUTION_ERROR_MESSAGE);
         }
     }
 
     /**
-     * Executes the 'output' command, changing the output method for displaying ASCII art.
+     * Executes the 'output' command, changing the output method for displaying ASCII art:
+     * the console, an HTML file, or a gzip compressed HTML file.
      *
      * @param commandArguments The arguments provided with the 'output' command
      */
@@ -327,6 +490,8 @@ public class Shell {
             System.out.println(OUTPUT_INCORRECT_FORMAT);
         } else if (commandArguments[1].equals(HTML_OUTPUT)) {
             asciiOutput = new HtmlAsciiOutput(DEFAULT_HTML_OUTPUT_PATH, DEFAULT_HTML_FONT);
+        } else if (commandArguments[1].equals(GZIP_HTML_OUTPUT)) {
+            asciiOutput = new HtmlAsciiOutput(DEFAULT_HTML_OUTPUT_PATH, DEFAULT_HTML_FONT, true);
         } else if (commandArguments[1].equals(CONSOLE_OUTPUT)) {
             asciiOutput = new ConsoleAsciiOutput();
         } else {
@@ -335,18 +500,218 @@ public class Shell {
     }
 
     /**
-     * Executes the 'asciiArt' command, generating and displaying the ASCII art.
+     * Executes the 'color' command, turning the output of every character in the average color of
+     * its tile on or off.
+     *
+     * @param commandArguments The arguments provided with the 'color' command
+     */
+    private void runColorCommand(String[] commandArguments) {
+        if (commandArguments.length != COLOR_COMMAND_LENGTH) {
+            System.out.println(INCORRECT_COLOR_FORMAT_ERROR_MESSAGE);
+        } else if (commandArguments[1].equals(COLOR_ON) || commandArguments[1].equals(COLOR_OFF)) {
+            colors = commandArguments[1].equals(COLOR_ON);
+            imageManager.setColors(colors);
+        } else {
+            System.out.println(INCORRECT_COLOR_FORMAT_ERROR_MESSAGE);
+        }
+    }
+
+    /**
+     * Executes the 'asciiArt' command, generating and displaying the ASCII art,
+     * in the colors of its tiles if colors are on.
      */
     private void runAsciiArtCommand() {
         try {
-            AsciiArtAlgorithm asciiArtAlgorithm = new AsciiArtAlgorithm(
-                    imageManager.getBrightnessMap(),
-                    subImgCharMatcher
-            );
-            char[][] asciiArt = asciiArtAlgorithm.run();
-            asciiOutput.out(asciiArt);
+            char[][] asciiArt = renderAsciiArt();
+            if (colors) {
+                asciiOutput.out(asciiArt, imageManager.getColorMap());
+            } else {
+                asciiOutput.out(asciiArt);
+            }
+        } catch (EmptyCharsetException e) {
+            System.out.println(EMPTY_CHARSET_ERROR_MESSAGE);
+        } catch (UncheckedIOException e) {
+            System.out.println(IMAGE_PATH_ERROR_MESSAGE);
+        }
+    }
+
+    /**
+     * Executes the 'stats' command, printing the latency percentiles and the allocation per run of
+     * every pipeline stage since startup.
+     */
+    private void runStatsCommand() {
+        System.out.println(STATS_HEADER);
+        for (PipelineStage stage : PipelineStage.values()) {
+            LatencyHistogram latencies = stage.getLatencies();
+            long count = latencies.getCount();
+            System.out.println(String.format(STATS_ROW, stage.getLabel(), count, latencies.getMeanMillis(),
+                    latencies.getPercentileMillis(P50), latencies.getPercentileMillis(P90),
+                    latencies.getPercentileMillis(P99), latencies.getMaxMillis(),
+                    count == 0 ? 0 : stage.getAllocatedBytes() / BYTES_IN_KB / count));
+        }
+    }
+
+    /**
+     * Executes the 'animate' command: plays the frames of an animated GIF, or of a directory of
+     * numbered frames, in the terminal at the current resolution and charset. Frames are decoded
+     * ahead of the display, and only the cells that change from a frame to the next are matched
+     * again and repainted. The console is used regardless of the output method.
+     *
+     * @param commandArguments The arguments provided with the 'animate' command
+     */
+    private void runAnimateCommand(String[] commandArguments) {
+        if (commandArguments.length != ANIMATE_COMMAND_LENGTH) {
+            System.out.println(INCORRECT_ANIMATE_FORMAT_ERROR_MESSAGE);
+            return;
+        }
+        TerminalDiffRenderer renderer = new TerminalDiffRenderer();
+        FrameConverter frameConverter = new FrameConverter(subImgCharMatcher);
+        try (FrameSequence frames = imageManager.openFrames(commandArguments[1])) {
+            for (FrameSequence.Frame frame = frames.next(); frame != null; frame = frames.next()) {
+                renderer.out(frameConverter.convert(frame));
+                Thread.sleep(FRAME_INTERVAL_MILLIS);
+            }
+        } catch (IOException e) {
+            System.out.println(IMAGE_PATH_ERROR_MESSAGE);
+        } catch (ResolutionExceedingBoundariesException e) {
+            System.out.println(FRAMES_RESOLUTION_ERROR_MESSAGE);
+        } catch (EmptyCharsetException e) {
+            System.out.println(EMPTY_CHARSET_ERROR_MESSAGE);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Executes the 'watch' command: displays the ASCII art of the current image in the terminal and
+     * repaints the cells that change whenever the image file is modified, until the user presses Enter.
+     * The console is used regardless of the output method.
+     */
+    private void runWatchCommand() {
+        Path file = Paths.get(imagePath).toAbsolutePath();
+        TerminalDiffRenderer renderer = new TerminalDiffRenderer();
+        try (WatchService watchService = file.getFileSystem().newWatchService()) {
+            file.getParent().register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY);
+            renderer.out(renderAsciiArt());
+            System.out.println(String.format(WATCH_STARTED_MESSAGE, imagePath));
+            Thread watcher = new Thread(() -> watchImage(watchService, file, renderer));
+            watcher.setDaemon(true);
+            watcher.start();
+            KeyboardInput.readLine();
+            watcher.interrupt();
+            watcher.join();
+        } catch (IOException | UncheckedIOException e) {
+            System.out.println(IMAGE_PATH_ERROR_MESSAGE);
         } catch (EmptyCharsetException e) {
             System.out.println(EMPTY_CHARSET_ERROR_MESSAGE);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Waits for modifications of the watched image file, reloading it and repainting the changed
+     * cells after each one, until interrupted. The events of a single save are
+     * collected for a short quiet period first; a file that cannot be read yet (e.g. half written)
+     * keeps the previous display until its next modification. Any other failure to reload, such as
+     * a resolution exceeding the new image boundaries, is reported below the display and keeps the
+     * previous image; the next successful reload repaints the whole display.
+     *
+     * @param watchService the watch service registered on the directory of the file
+     * @param file         the absolute path of the watched file
+     * @param renderer     the terminal renderer displaying the ASCII art
+     */
+    private void watchImage(WatchService watchService, Path file, TerminalDiffRenderer renderer) {
+        try {
+            while (true) {
+                boolean changed = false;
+                WatchKey key = watchService.take();
+                while (key != null) {
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        changed |= event.kind() == StandardWatchEventKinds.OVERFLOW ||
+                                file.getFileName().equals(event.context());
+                    }
+                    key.reset();
+                    key = watchService.poll(WATCH_DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS);
+                }
+                if (changed) {
+                    try {
+                        imageManager.setImage(file.toString());
+                        renderer.out(renderAsciiArt());
+                    } catch (IOException e) {
+                        // keep the previous display
+                    } catch (ResolutionExceedingBoundariesException e) {
+                        reportReloadError(renderer, IMAGE_RESOLUTION_ERROR_MESSAGE);
+                    } catch (EmptyCharsetException e) {
+                        reportReloadError(renderer, EMPTY_CHARSET_ERROR_MESSAGE);
+                    } catch (RuntimeException e) {
+                        reportReloadError(renderer, String.format(WATCH_RELOAD_ERROR_FORMAT, e));
+                    }
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // watching stopped
+        }
+    }
+
+    /**
+     * Prints an error below the watched display, which is then repainted in full on the next reload.
+     *
+     * @param renderer the terminal renderer displaying the ASCII art
+     * @param message  the error message
+     */
+    private static void reportReloadError(TerminalDiffRenderer renderer, String message) {
+        System.out.println(message);
+        renderer.reset();
+    }
+
+    /**
+     * Generates the ASCII art of the current image, resolution and charset.
+     * The last ASCII art is returned again if none of them changed since; if only the charset
+     * changed, it is remapped from the last brightness map, and if only the image changed, only
+     * the tiles whose brightness changed are matched again.
+     *
+     * @return a 2D char array representing the ASCII art, not to be modified
+     * @throws EmptyCharsetException if the character set is empty
+     */
+    char[][] renderAsciiArt() throws EmptyCharsetException {
+        long imageVersion = imageManager.getVersion();
+        long charsetVersion = subImgCharMatcher.getVersion();
+        if (imageVersion == renderedImageVersion && charsetVersion == renderedCharsetVersion) {
+            return renderedAsciiArt;
+        }
+        double[][] brightnessMap = imageManager.getBrightnessMap();
+        if (charsetVersion == renderedCharsetVersion && renderedBrightnessMap != null &&
+                brightnessMap.length == renderedBrightnessMap.length &&
+                brightnessMap[0].length == renderedBrightnessMap[0].length) {
+            renderedAsciiArt = rematchChangedTiles(brightnessMap);
+        } else {
+            renderedAsciiArt = new AsciiArtAlgorithm(brightnessMap, subImgCharMatcher,
+                    AsciiArtAlgorithm.configuredPool()).run();
+        }
+        renderedBrightnessMap = brightnessMap;
+        renderedImageVersion = imageVersion;
+        renderedCharsetVersion = charsetVersion;
+        return renderedAsciiArt;
+    }
+
+    /**
+     * Builds the ASCII art of a brightness map the size of the last rendered one, copying the chars
+     * of tiles whose brightness did not change from the last rendered ASCII art.
+     *
+     * @param brightnessMap the new brightness map
+     * @return a new 2D char array representing the ASCII art
+     */
+    private char[][] rematchChangedTiles(double[][] brightnessMap) {
+        char[][] asciiArt = new char[brightnessMap.length][brightnessMap[0].length];
+        for (int i = 0; i < asciiArt.length; i++) {
+            for (int j = 0; j < asciiArt[i].length; j++) {
+                asciiArt[i][j] = brightnessMap[i][j] == renderedBrightnessMap[i][j] ?
+                        renderedAsciiArt[i][j] :
+                        subImgCharMatcher.getCharByImageBrightness(brightnessMap[i][j]);
+            }
         }
+        return asciiArt;
     }
 }
@@ -0,0 +1,230 @@
+package image;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * Reads an image file in horizontal strips through an ImageReader and accumulates every strip into
+ * tile sums before discarding it, so the memory used is proportional to one strip plus
+ * the tile sums, whatever the size of the image.
+ * <p>
+ * Every strip is a separate read of a source region, and sequential formats such as PNG and JPEG
+ * decode each one from the start of the image, so n strips cost about (n + 1) / 2 full decodes.
+ * The strip count is therefore capped at {@link #MAX_STRIPS}, letting strips of the largest images
+ * grow beyond {@link #STRIP_PIXELS}.
+ */
+class StripBrightnessReader {
+    // approximate number of pixels decoded per strip.
+    static final int STRIP_PIXELS = 1 << 22;
+
+    // maximal number of strips per accumulation, each decoding the image from its start.
+    static final int MAX_STRIPS = 8;
+
+    // number of file bytes hashed at a time.
+    private static final int FILE_HASH_BUFFER_BYTES = 1 << 16;
+
+    // the image file.
+    private final File file;
+
+    // width of the image.
+    private final int width;
+
+    // height of the image.
+    private final int height;
+
+    // content hash of the pixels streamed by the last accumulation.
+    private long contentHash;
+
+    /**
+     * Constructs a reader of the given file, reading only its header.
+     *
+     * @param file the image file
+     * @throws IOException if the file cannot be read or its format is not supported
+     */
+    StripBrightnessReader(File file) throws IOException {
+        this.file = file;
+        try (ImageInputStream input = openStream(file)) {
+            ImageReader reader = openReader(input);
+            try {
+                width = reader.getWidth(0);
+                height = reader.getHeight(0);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Returns the width of the image.
+     *
+     * @return the width of the image
+     */
+    int getWidth() {
+        return width;
+    }
+
+    /**
+     * Returns the height of the image.
+     *
+     * @return the height of the image
+     */
+    int getHeight() {
+        return height;
+    }
+
+    /**
+     * Returns the hash of the pixels streamed by the last accumulation, equal to
+     * {@link Image#contentHash()} of the fully decoded image when every pixel was decoded.
+     * A subsampled accumulation only hashes the sampled pixels, which do not identify the image;
+     * see {@link #hashFile()} instead.
+     *
+     * @return the content hash
+     */
+    long getContentHash() {
+        return contentHash;
+    }
+
+    /**
+     * Streams the image strip by strip and adds every sampled pixel to the sums of the tile it falls
+     * into, once the image is placed at the padding offsets of the tile sums.
+     * With a subsampling factor s, only pixels whose row and column are multiples of s are decoded.
+     * Padding pixels are not added, nor the last image rows if they fall past the tile grid, though
+     * they are still hashed.
+     *
+     * @param tileSums    the tile sums to add to
+     * @param subsampling the subsampling factor, 1 to decode every pixel
+     * @throws IOException if the file cannot be read
+     */
+    void accumulate(TileSums tileSums, int subsampling) throws IOException {
+        int sampledWidth = sampledCount(0, width, subsampling);
+        int sampledStripRows = sampledStripRows(sampledWidth, sampledCount(0, height, subsampling));
+        int stripRows = sampledStripRows * subsampling;
+        int[] strip = new int[sampledStripRows * sampledWidth];
+        int coveredRows = tileSums.coveredImageRows();
+        long hash = Image.initialHash(width, height);
+        try (ImageInputStream input = openStream(file)) {
+            ImageReader reader = openReader(input);
+            try {
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                for (int top = 0; top < height; top += stripRows) {
+                    int rows = Math.min(stripRows, height - top);
+                    int sampledRows = sampledCount(0, rows, subsampling);
+                    int sampledPixels = sampledRows * sampledWidth;
+                    param.setSourceRegion(new Rectangle(0, top, width, rows));
+                    BufferedImage im = reader.read(0, param);
+                    im.getRGB(0, 0, sampledWidth, sampledRows, strip, 0, sampledWidth);
+                    for (int i = 0; i < sampledPixels; i++) {
+                        strip[i] &= Image.RGB_MASK;
+                    }
+                    hash = Image.hashPixels(hash, strip, 0, sampledPixels);
+                    for (int k = 0; k < sampledRows && top + k * subsampling < coveredRows; k++) {
+                        tileSums.addRow(top + k * subsampling, strip, k * sampledWidth, width, subsampling);
+                    }
+                }
+            } finally {
+                reader.dispose();
+            }
+        }
+        contentHash = hash;
+    }
+
+    /**
+     * Hashes the dimensions of the image and the bytes of its file, without decoding it. The bytes
+     * determine every pixel, so equal hashes mean equal images wherever the files are stored, and
+     * the hash is known before a subsampled decode that never sees every pixel. It differs from
+     * {@link Image#contentHash()} of the same image.
+     *
+     * @return the content hash of the file
+     * @throws IOException if the file cannot be read
+     */
+    long hashFile() throws IOException {
+        long hash = Image.initialHash(width, height);
+        byte[] buffer = new byte[FILE_HASH_BUFFER_BYTES];
+        int[] words = new int[FILE_HASH_BUFFER_BYTES / Integer.BYTES];
+        long length = 0;
+        try (InputStream input = Files.newInputStream(file.toPath())) {
+            for (int read = input.readNBytes(buffer, 0, buffer.length); read > 0;
+                 read = input.readNBytes(buffer, 0, buffer.length)) {
+                Arrays.fill(buffer, read, buffer.length, (byte) 0);
+                int count = TileSums.ceilDiv(read, Integer.BYTES);
+                ByteBuffer.wrap(buffer).asIntBuffer().get(words, 0, count);
+                hash = Image.hashPixels(hash, words, 0, count);
+                length += read;
+            }
+        }
+        // the length tells trailing zero bytes from the padding of the last words.
+        return Image.hashPixels(hash, new int[]{(int) length, (int) (length >>> Integer.SIZE)}, 0, 2);
+    }
+
+    /**
+     * Chooses the number of sampled rows per strip: about {@link #STRIP_PIXELS} sampled pixels,
+     * unless that takes more than {@link #MAX_STRIPS} strips.
+     *
+     * @param sampledWidth  the number of sampled columns
+     * @param sampledHeight the number of sampled rows
+     * @return the number of sampled rows per strip
+     */
+    static int sampledStripRows(int sampledWidth, int sampledHeight) {
+        return Math.max(Math.max(1, STRIP_PIXELS / sampledWidth), TileSums.ceilDiv(sampledHeight, MAX_STRIPS));
+    }
+
+    /**
+     * Counts the multiples of the subsampling factor inside [from, to), which are the sampled
+     * positions of that span.
+     *
+     * @param from        the first position of the span
+     * @param to          the position after the last position of the span
+     * @param subsampling the subsampling factor
+     * @return the number of sampled positions
+     */
+    static int sampledCount(int from, int to, int subsampling) {
+        if (to <= from) {
+            return 0;
+        }
+        return TileSums.ceilDiv(to, subsampling) - TileSums.ceilDiv(from, subsampling);
+    }
+
+    /**
+     * Opens an image input stream over the file.
+     *
+     * @param file the image file
+     * @return the image input stream
+     * @throws IOException if the file cannot be opened
+     */
+    private static ImageInputStream openStream(File file) throws IOException {
+        ImageInputStream input = ImageIO.createImageInputStream(file);
+        if (input == null) {
+            throw new IOException("Cannot open image file: " + file);
+        }
+        return input;
+    }
+
+    /**
+     * Finds a reader for the stream and attaches it.
+     *
+     * @param input the image input stream
+     * @return the reader, to be disposed by the caller
+     * @throws IOException if the image format is not supported
+     */
+    private static ImageReader openReader(ImageInputStream input) throws IOException {
+        Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+        if (!readers.hasNext()) {
+            throw new IOException("Unsupported image format");
+        }
+        ImageReader reader = readers.next();
+        reader.setInput(input, true, true);
+        return reader;
+    }
+}
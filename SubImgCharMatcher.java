@@ -6,14 +6,45 @@ import java.util.*;
  * The SubImgCharMatcher class facilitates matching characters to image brightness levels.
  * It allows users to add characters along with their corresponding brightness values,
  * and retrieve the character that best matches a given brightness value.
+ * Lookups are safe to call from multiple threads concurrently, as long as the charset is not
+ * changed (addChar/removeChar) at the same time; the lazily built lookup table is published safely.
  */
 public class SubImgCharMatcher {
+    /**
+     * Default number of buckets of the brightness lookup table.
+     */
+    public static final int DEFAULT_LOOKUP_TABLE_BUCKETS = 4096;
+
+    // Lookup table entry of a bucket that straddles a decision boundary
+    private static final int AMBIGUOUS_BUCKET = -1;
+
     // TreeMap to store characters mapped to their unnormalized brightness values
     private final HashMap<Character, Double> charToUnnormalizedBrightnessMap;
 
     // Variables to store the minimum and maximum brightness values
     private Double minBrightness, maxBrightness;
 
+    // Normalized brightness of the charset, sorted ascending (ties by char code)
+    private double[] sortedBrightness = new double[0];
+
+    // Characters of the charset, parallel to sortedBrightness
+    private char[] sortedChars = new char[0];
+
+    // Number of buckets of the lookup table, 0 when the lookup table mode is off
+    private int lookupTableBuckets = DEFAULT_LOOKUP_TABLE_BUCKETS;
+
+    // Whether every lookup table answer is checked against the exact search
+    private boolean verifyLookupTable;
+
+    // Chosen char per quantized brightness bucket, built lazily after a charset change
+    private volatile int[] lookupTable;
+
+    // Version of the charset, incremented whenever a character is added or removed
+    private long version;
+
+    // Converter rendering the glyphs of the charset
+    private final CharConverter charConverter;
+
     /**
      * Constructs a SubImgCharMatcher object with the given charset.
      * Initializes the charToUnnormalizedBrightnessMap and adds characters
@@ -22,54 +53,112 @@ public class SubImgCharMatcher {
      * @param charset Array of characters representing the charset
      */
     public SubImgCharMatcher(char[] charset) {
+        this(charset, CharConverter.getDefault());
+    }
+
+    /**
+     * Constructs a SubImgCharMatcher object with the given charset, measuring the brightness of
+     * the characters as rendered by the given converter. The glyphs of the charset missing from
+     * the glyph cache are rendered together, in parallel.
+     *
+     * @param charset       Array of characters representing the charset
+     * @param charConverter The converter rendering the characters, fixing their font and resolution
+     */
+    public SubImgCharMatcher(char[] charset, CharConverter charConverter) {
         this.charToUnnormalizedBrightnessMap = new HashMap<>();
+        this.charConverter = charConverter;
 
-        // adding to the charByBrightness map (character, brightness),
-        for (char c : charset) {
-            addChar(c);
+        // adding to the charByBrightness map (character, brightness), indexing them once at the end
+        double[] brightness = GlyphBrightnessCache.getShared().getBrightness(charConverter, charset);
+        for (int i = 0; i < charset.length; i++) {
+            putChar(charset[i], brightness[i]);
         }
+        rebuildIndex();
     }
 
     /**
      * Retrieves the character that best matches the given image brightness.
+     * The closest normalized brightness wins; ties go to the lower brightness, then to the lower
+     * char code. In lookup table mode this is a single array index for most brightness values,
+     * falling back to the exact search only for the few buckets containing a decision boundary.
      *
      * @param brightness The brightness value of the image
      * @return The character that best matches the given brightness
      */
     public char getCharByImageBrightness(double brightness) {
-        //searching for closest value
-        Map.Entry<Character, Double> foundEntry = null;
-        for (Map.Entry<Character, Double> entry : charToUnnormalizedBrightnessMap.entrySet()) {
-            if (foundEntry == null) {
-                foundEntry = entry;
-            } else {
-                double currNormalizedBrightness = (entry.getValue() - minBrightness) /
-                        (maxBrightness - minBrightness);
-                double currDiff = Math.abs(currNormalizedBrightness - brightness);
-
-                double foundNormalizedBrightness = (foundEntry.getValue() - minBrightness) /
-                        (maxBrightness - minBrightness);
-                double foundDiff = Math.abs(foundNormalizedBrightness - brightness);
-
-                if (currDiff <= foundDiff) {
-                    if (currDiff == foundDiff) {
-                        if (currNormalizedBrightness == foundNormalizedBrightness) {
-                            foundEntry = (int) entry.getKey() < (int) foundEntry.getKey() ?
-                                    entry : foundEntry;
-                        } else {
-                            foundEntry = currNormalizedBrightness < foundNormalizedBrightness ?
-                                    entry : foundEntry;
-                        }
-                    } else {
-                        foundEntry = entry;
-                    }
-                }
-            }
+        if (lookupTableBuckets == 0) {
+            return searchCharByImageBrightness(brightness);
+        }
+        int[] table = lookupTable;
+        if (table == null) {
+            // concurrent readers may build it twice, but never see it half built.
+            table = buildLookupTable();
+            lookupTable = table;
+        }
+        int bucket = Math.min(Math.max((int) (brightness * table.length), 0), table.length - 1);
+        int found = table[bucket];
+        if (found == AMBIGUOUS_BUCKET) {
+            return searchCharByImageBrightness(brightness);
+        }
+        if (verifyLookupTable && found != searchCharByImageBrightness(brightness)) {
+            throw new IllegalStateException(String.format(
+                    "Lookup table answered '%c' for brightness %s, exact search disagrees",
+                    (char) found, brightness));
         }
-        assert foundEntry != null;
-        return foundEntry.getKey();
+        return (char) found;
     }
 
+    /**
+     * Sets the number of buckets of the brightness lookup table, or turns the lookup table mode off.
+     * The bucket count must be a power of two, so bucket bounds are exact in floating point.
+     *
+     * @param buckets The number of buckets, or 0 to always use the exact search
+     * @throws IllegalArgumentException If the bucket count is neither 0 nor a power of two
+     */
+    public void setLookupTableBuckets(int buckets) {
+        if (buckets < 0 || Integer.bitCount(buckets) > 1) {
+            throw new IllegalArgumentException("Bucket count must be 0 or a power of two: " + buckets);
+        }
+        this.lookupTableBuckets = buckets;
+        this.lookupTable = null;
+    }
+
+    /**
+     * Enables or disables checking every lookup table answer against the exact search.
+     * A disagreement throws an IllegalStateException.
+     *
+     * @param verify Whether to verify lookup table answers
+     */
+    public void setVerifyLookupTable(boolean verify) {
+        this.verifyLookupTable = verify;
+    }
+
+    /**
+     * Retrieves the character that best matches the given brightness by a binary search
+     * over the sorted index.
+     *
+     * @param brightness The brightness value of the image
+     * @return The character that best matches the given brightness
+     */
+    private char searchCharByImageBrightness(double brightness) {
+        assert sortedChars.length > 0;
+        if (minBrightness.equals(maxBrightness)) {
+            // all characters are equally bright, the lowest char code wins.
+            return sortedChars[0];
+        }
+        int above = lowerBound(brightness);
+        if (above == sortedBrightness.length) {
+            return sortedChars[lowerBound(sortedBrightness[above - 1])];
+        }
+        if (above == 0) {
+            return sortedChars[0];
+        }
+        // the lowest char code among the equally bright characters below.
+        int below = lowerBound(sortedBrightness[above - 1]);
+        double belowDiff = Math.abs(sortedBrightness[below] - brightness);
+        double aboveDiff = Math.abs(sortedBrightness[above] - brightness);
+        return aboveDiff < belowDiff ? sortedChars[above] : sortedChars[below];
+    }
 
     /**
      * Adds a character along with its corresponding brightness value to the map.
@@ -79,15 +168,26 @@ public class SubImgCharMatcher {
      */
     public void addChar(char c) {
         if (!this.charToUnnormalizedBrightnessMap.containsKey(c)) {
-            double brightness = getCharBrightness(c);
-            this.charToUnnormalizedBrightnessMap.put(c, brightness);
+            putChar(c, getCharBrightness(c));
+            rebuildIndex();
+        }
+    }
 
-            if (minBrightness == null || brightness < minBrightness) {
-                minBrightness = brightness;
-            }
-            if (maxBrightness == null || brightness > maxBrightness) {
-                maxBrightness = brightness;
-            }
+    /**
+     * Puts a character and its brightness in the map, without rebuilding the index.
+     * Updates minBrightness and maxBrightness if necessary.
+     *
+     * @param c          The character to be put
+     * @param brightness The unnormalized brightness of the character
+     */
+    private void putChar(char c, double brightness) {
+        this.charToUnnormalizedBrightnessMap.put(c, brightness);
+
+        if (minBrightness == null || brightness < minBrightness) {
+            minBrightness = brightness;
+        }
+        if (maxBrightness == null || brightness > maxBrightness) {
+            maxBrightness = brightness;
         }
     }
 
@@ -111,6 +211,17 @@ public class SubImgCharMatcher {
             maxBrightness = currCharBrightness == maxBrightness ?
                     Collections.max(this.charToUnnormalizedBrightnessMap.values()) : maxBrightness;
         }
+        rebuildIndex();
+    }
+
+    /**
+     * Retrieves the version of the charset, which changes whenever a character is actually
+     * added or removed, so callers can tell whether ASCII art they rendered is still current.
+     *
+     * @return The version of the charset
+     */
+    public long getVersion() {
+        return version;
     }
 
     /**
@@ -124,22 +235,82 @@ public class SubImgCharMatcher {
         return charset;
     }
 
+    /**
+     * Rebuilds the sorted primitive index of normalized brightness values and characters.
+     * Normalization is done here once per charset change instead of once per lookup.
+     */
+    private void rebuildIndex() {
+        lookupTable = null;
+        version++;
+        Character[] chars = charToUnnormalizedBrightnessMap.keySet().toArray(new Character[0]);
+        Arrays.sort(chars, Comparator.comparingDouble(
+                        (Character c) -> normalize(charToUnnormalizedBrightnessMap.get(c)))
+                .thenComparing(Comparator.naturalOrder()));
+        sortedBrightness = new double[chars.length];
+        sortedChars = new char[chars.length];
+        for (int i = 0; i < chars.length; i++) {
+            sortedChars[i] = chars[i];
+            sortedBrightness[i] = normalize(charToUnnormalizedBrightnessMap.get(chars[i]));
+        }
+    }
+
+    /**
+     * Materializes the chosen char of every brightness bucket. The chosen char never moves down
+     * as the brightness grows, so a bucket whose lowest and highest values choose the same char
+     * chooses it for all of its values; other buckets are marked ambiguous.
+     *
+     * @return The lookup table, holding a char code or AMBIGUOUS_BUCKET per bucket
+     */
+    private int[] buildLookupTable() {
+        int[] table = new int[lookupTableBuckets];
+        for (int bucket = 0; bucket < lookupTableBuckets; bucket++) {
+            char low = searchCharByImageBrightness((double) bucket / lookupTableBuckets);
+            char high = bucket == lookupTableBuckets - 1 ?
+                    searchCharByImageBrightness(1.0) :
+                    searchCharByImageBrightness(Math.nextDown((double) (bucket + 1) / lookupTableBuckets));
+            table[bucket] = low == high ? low : AMBIGUOUS_BUCKET;
+        }
+        return table;
+    }
+
+    /**
+     * Normalizes an unnormalized character brightness into [0, 1] using the current charset range.
+     *
+     * @param brightness The unnormalized brightness of a character
+     * @return The normalized brightness
+     */
+    private double normalize(double brightness) {
+        return (brightness - minBrightness) / (maxBrightness - minBrightness);
+    }
+
+    /**
+     * Finds the first index of the sorted index whose brightness is not lower than the given one.
+     *
+     * @param brightness The brightness to search for
+     * @return The first index with a brightness of at least the given one, or the index length
+     */
+    private int lowerBound(double brightness) {
+        int low = 0;
+        int high = sortedBrightness.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (sortedBrightness[mid] < brightness) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
     /**
      * Computes the brightness value for the given character.
+     * Glyph brightness values are cached across calls and processes, see GlyphBrightnessCache.
      *
      * @param c The character for which brightness is to be calculated
      * @return The brightness value of the character
      */
     private double getCharBrightness(char c) {
-        boolean[][] boolArr = CharConverter.convertToBoolArray(c);
-        int whitePixelsCounter = 0;
-        for (boolean[] row : boolArr) {
-            for (boolean pixel : row) {
-                if (pixel) {
-                    whitePixelsCounter++;
-                }
-            }
-        }
-        return (double) whitePixelsCounter / (boolArr.length * boolArr[0].length);
+        return GlyphBrightnessCache.getShared().getBrightness(charConverter, c);
     }
 }
@@ -0,0 +1,119 @@
+package image;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * A summed-area table (integral image) of the luma of an image.
+ * Built once per image, it answers the luma sum of any axis-aligned rectangle with four lookups,
+ * so the brightness of every tile can be computed in O(1) regardless of the tile size.
+ * Luma is accumulated in fixed point (see {@link ImageManager#luma(int)}) so sums are exact
+ * and independent of the summation order. Row luma comes from the {@link LumaKernel}.
+ */
+class SummedAreaTable {
+    //(height + 1) x (width + 1) row-major table, entry (i, j) is the sum of all pixels above and left of it.
+    private final long[] table;
+
+    //width of the summed image.
+    private final int width;
+
+    //height of the summed image.
+    private final int height;
+
+    /**
+     * Builds the summed-area table of the given image, which may be a view of a larger raster.
+     *
+     * @param image the image to sum
+     */
+    SummedAreaTable(Image image) {
+        this(image, null, 1);
+    }
+
+    /**
+     * Builds the summed-area table of the given image, in parallel on the given pool.
+     * Rows are prefix-summed in parallel bands, then columns are accumulated down the rows in
+     * parallel bands of columns. Sums are exact integers, so the table is identical to the
+     * sequential one.
+     *
+     * @param image          the image to sum
+     * @param pool           the fork/join pool, or null to build sequentially
+     * @param minRowsPerBand the number of rows (or columns) below which a band is not split further
+     */
+    SummedAreaTable(Image image, ForkJoinPool pool, int minRowsPerBand) {
+        this.width = image.getWidth();
+        this.height = image.getHeight();
+        int stride = width + 1;
+        this.table = new long[(height + 1) * stride];
+        int[] raster = image.raster();
+        LumaKernel kernel = LumaKernel.get();
+        if (pool == null) {
+            int[] luma = new int[width];
+            for (int i = 0; i < height; i++) {
+                long rowSum = 0;
+                int rowStart = (i + 1) * stride;
+                int pixel = image.rowStart(i);
+                kernel.luma(raster, pixel, pixel + width, luma, 0);
+                for (int j = 0; j < width; j++) {
+                    rowSum += luma[j];
+                    table[rowStart + j + 1] = table[rowStart - stride + j + 1] + rowSum;
+                }
+            }
+            return;
+        }
+        RowBands.run(pool, height, minRowsPerBand, (fromRow, toRow) -> {
+            int[] luma = new int[width];
+            for (int i = fromRow; i < toRow; i++) {
+                long rowSum = 0;
+                int rowStart = (i + 1) * stride;
+                int pixel = image.rowStart(i);
+                kernel.luma(raster, pixel, pixel + width, luma, 0);
+                for (int j = 0; j < width; j++) {
+                    rowSum += luma[j];
+                    table[rowStart + j + 1] = rowSum;
+                }
+            }
+        });
+        RowBands.run(pool, width, minRowsPerBand, (fromCol, toCol) -> {
+            for (int i = 2; i <= height; i++) {
+                int rowStart = i * stride;
+                for (int j = fromCol + 1; j <= toCol; j++) {
+                    table[rowStart + j] += table[rowStart - stride + j];
+                }
+            }
+        });
+    }
+
+    /**
+     * Returns the width of the summed image.
+     *
+     * @return the width of the summed image
+     */
+    int getWidth() {
+        return width;
+    }
+
+    /**
+     * Returns the height of the summed image.
+     *
+     * @return the height of the summed image
+     */
+    int getHeight() {
+        return height;
+    }
+
+    /**
+     * Returns the fixed-point luma sum of the given rectangle.
+     *
+     * @param row       the top row of the rectangle
+     * @param col       the left column of the rectangle
+     * @param rowsCount the height of the rectangle
+     * @param colsCount the width of the rectangle
+     * @return the luma sum of all pixels inside the rectangle
+     */
+    long sum(int row, int col, int rowsCount, int colsCount) {
+        int stride = width + 1;
+        int top = row * stride;
+        int bottom = (row + rowsCount) * stride;
+        return table[bottom + col + colsCount] - table[bottom + col]
+                - table[top + col + colsCount] + table[top + col];
+    }
+}
@@ -0,0 +1,221 @@
+package ascii_output;
+
+import ascii_art.PipelineStage;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.logging.Logger;
+
+/**
+ * Output a 2D array of chars to an ANSI terminal, repainting in place.
+ * The first frame clears the screen and is drawn from the top-left corner with the layout of
+ * {@link ConsoleAsciiOutput}; following frames of the same size only rewrite the cells that differ
+ * from the displayed frame, moving the cursor with ANSI escape sequences and restoring it afterwards.
+ * Cursor moves address absolute screen rows, which only match the frame rows while the frame and
+ * the lines below it fit the terminal: taller frames, or frames on a terminal of unknown height,
+ * are redrawn in full whenever they change instead. Instances are not safe for use from multiple
+ * threads.
+ */
+public class TerminalDiffRenderer extends ConsoleAsciiOutput {
+    //control sequence introducer.
+    private static final String CSI = "\033[";
+
+    //clears the screen and moves the cursor home.
+    private static final String CLEAR_SCREEN = CSI + "2J" + CSI + "H";
+
+    //saves the cursor position.
+    private static final String SAVE_CURSOR = "\0337";
+
+    //restores the saved cursor position.
+    private static final String RESTORE_CURSOR = "\0338";
+
+    //separator displayed after every character.
+    private static final char SPACING = ' ';
+
+    //terminal columns taken by every character.
+    private static final int COLUMNS_PER_CHAR = 2;
+
+    //terminal rows kept below the frame: the cursor line and a message line.
+    private static final int RESERVED_ROWS = 2;
+
+    //terminal height of an unknown terminal.
+    private static final int UNKNOWN_ROWS = 0;
+
+    //environment variable holding the terminal height.
+    private static final String LINES_VARIABLE = "LINES";
+
+    //command printing the terminal height and width.
+    private static final String[] STTY_SIZE = {"stty", "size"};
+
+    //device of the controlling terminal.
+    private static final String TTY_DEVICE = "/dev/tty";
+
+    //height of the terminal, in rows.
+    private final int terminalRows;
+
+    //reusable buffer of the escape sequences and chars of a frame.
+    private final StringBuilder frame = new StringBuilder();
+
+    //the displayed frame, or null before the first one.
+    private char[][] displayed;
+
+    /**
+     * Constructs a TerminalDiffRenderer for the terminal of the process, whose height is read from
+     * the LINES environment variable, or else from stty; frames are always redrawn in full if the
+     * height cannot be determined.
+     */
+    public TerminalDiffRenderer() {
+        this(detectTerminalRows());
+    }
+
+    /**
+     * Constructs a TerminalDiffRenderer for a terminal of the given height.
+     *
+     * @param terminalRows the height of the terminal in rows, 0 if unknown
+     */
+    public TerminalDiffRenderer(int terminalRows) {
+        this.terminalRows = terminalRows;
+    }
+
+    /**
+     * Constructs a TerminalDiffRenderer for a terminal of the given height, writing its escape
+     * sequences and chars to the given stream instead of the standard output.
+     *
+     * @param terminalRows the height of the terminal in rows, 0 if unknown
+     * @param out          the stream to write to, not closed by the renderer
+     */
+    public TerminalDiffRenderer(int terminalRows, OutputStream out) {
+        super(out);
+        this.terminalRows = terminalRows;
+    }
+
+    /**
+     * Displays a 2D array of characters, rewriting only the cells that changed since the
+     * previous frame if it has the same size and fits the terminal.
+     *
+     * @param chars the 2D array of characters to be output
+     */
+    @Override
+    public void out(char[][] chars) {
+        PipelineStage.Timer timer = PipelineStage.OUTPUT.start();
+        try (timer) {
+            frame.setLength(0);
+            boolean sameSize = displayed != null && displayed.length == chars.length &&
+                    displayed[0].length == chars[0].length;
+            if (sameSize && chars.length + RESERVED_ROWS <= terminalRows) {
+                appendChangedCells(chars);
+            } else if (!sameSize || !Arrays.deepEquals(displayed, chars)) {
+                appendFullFrame(chars);
+            }
+            if (frame.length() == 0) {
+                return;
+            }
+            try {
+                beginFrame();
+                append(frame);
+                endFrame();
+            } catch (IOException e) {
+                Logger.getGlobal().severe("Failed to write to the console");
+            }
+        }
+    }
+
+    /**
+     * Displays a 2D array of characters like {@link #out(char[][])}; colors are not repainted.
+     *
+     * @param chars  the 2D array of characters to be output
+     * @param colors ignored
+     */
+    @Override
+    public void out(char[][] chars, int[][] colors) {
+        out(chars);
+    }
+
+    /**
+     * Forgets the displayed frame, so the next one repaints the whole screen.
+     */
+    public void reset() {
+        displayed = null;
+    }
+
+    /**
+     * Determines the height of the terminal of the process.
+     *
+     * @return the number of rows of the terminal, or 0 if unknown
+     */
+    private static int detectTerminalRows() {
+        try {
+            String lines = System.getenv(LINES_VARIABLE);
+            if (lines != null) {
+                return Integer.parseInt(lines.trim());
+            }
+            if (!new File(TTY_DEVICE).exists()) {
+                return UNKNOWN_ROWS;
+            }
+            Process stty = new ProcessBuilder(STTY_SIZE)
+                    .redirectInput(ProcessBuilder.Redirect.from(new File(TTY_DEVICE)))
+                    .redirectError(ProcessBuilder.Redirect.DISCARD)
+                    .start();
+            String size = new String(stty.getInputStream().readAllBytes(), StandardCharsets.US_ASCII).trim();
+            return stty.waitFor() == 0 ? Integer.parseInt(size.split(" ")[0]) : UNKNOWN_ROWS;
+        } catch (IOException | NumberFormatException e) {
+            return UNKNOWN_ROWS;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return UNKNOWN_ROWS;
+        }
+    }
+
+    /**
+     * Appends a screen clear followed by every row of the frame, leaving the cursor below it.
+     *
+     * @param chars the frame
+     */
+    private void appendFullFrame(char[][] chars) {
+        String lineSeparator = System.lineSeparator();
+        frame.append(CLEAR_SCREEN);
+        displayed = new char[chars.length][];
+        for (int y = 0; y < chars.length; y++) {
+            for (char c : chars[y]) {
+                frame.append(c).append(SPACING);
+            }
+            frame.append(lineSeparator);
+            displayed[y] = chars[y].clone();
+        }
+    }
+
+    /**
+     * Appends a cursor move and the new chars of every run of changed cells, between a save and
+     * a restore of the cursor position. Appends nothing if no cell changed.
+     *
+     * @param chars the frame, of the size of the displayed one
+     */
+    private void appendChangedCells(char[][] chars) {
+        for (int y = 0; y < chars.length; y++) {
+            char[] row = chars[y];
+            char[] displayedRow = displayed[y];
+            int x = 0;
+            while (x < row.length) {
+                if (row[x] == displayedRow[x]) {
+                    x++;
+                    continue;
+                }
+                if (frame.length() == 0) {
+                    frame.append(SAVE_CURSOR);
+                }
+                frame.append(CSI).append(y + 1).append(';').append(x * COLUMNS_PER_CHAR + 1).append('H');
+                while (x < row.length && row[x] != displayedRow[x]) {
+                    frame.append(row[x]).append(SPACING);
+                    displayedRow[x] = row[x];
+                    x++;
+                }
+            }
+        }
+        if (frame.length() > 0) {
+            frame.append(RESTORE_CURSOR);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package image;
+
+/**
+ * Per-tile sums of the fixed-point luma of an image, and optionally of its red, green and blue
+ * channels, accumulated row by row in a single pass once the image is placed at padding offsets
+ * inside a grid of square tiles. Padding pixels are not summed.
+ */
+class TileSums {
+    // luma sums, [tile rows][tile columns].
+    final long[][] luma;
+
+    // channel sums, [tile rows][tile columns], or null if colors are not summed.
+    final long[][] red, green, blue;
+
+    // size of a square tile, in pixels.
+    final int tileSize;
+
+    // number of padding rows above the image.
+    final int heightPadding;
+
+    // number of padding columns left of the image.
+    final int widthPadding;
+
+    /**
+     * Constructs zeroed tile sums.
+     *
+     * @param tileRows      the number of tile rows
+     * @param tileColumns   the number of tile columns
+     * @param tileSize      the size of a square tile, in pixels
+     * @param heightPadding the number of padding rows above the image
+     * @param widthPadding  the number of padding columns left of the image
+     * @param withColors    whether to sum the color channels as well
+     */
+    TileSums(int tileRows, int tileColumns, int tileSize, int heightPadding, int widthPadding,
+             boolean withColors) {
+        this.luma = new long[tileRows][tileColumns];
+        this.red = withColors ? new long[tileRows][tileColumns] : null;
+        this.green = withColors ? new long[tileRows][tileColumns] : null;
+        this.blue = withColors ? new long[tileRows][tileColumns] : null;
+        this.tileSize = tileSize;
+        this.heightPadding = heightPadding;
+        this.widthPadding = widthPadding;
+    }
+
+    /**
+     * Returns whether the color channels are summed.
+     *
+     * @return true if the color channels are summed
+     */
+    boolean hasColors() {
+        return red != null;
+    }
+
+    /**
+     * Returns the number of image rows covered by the tile grid. When the tile size does not divide
+     * the padded height, the last image rows fall past the grid and are not summed.
+     *
+     * @return the index of the first image row past the tile grid
+     */
+    int coveredImageRows() {
+        return luma.length * tileSize - heightPadding;
+    }
+
+    /**
+     * Adds a row of sampled pixels to the sums of the tiles it crosses.
+     * The row must be covered by the tile grid, see {@link #coveredImageRows()}.
+     * Rows of the same tile row must not be added concurrently.
+     *
+     * @param imageRow    the image row of the pixels
+     * @param pixels      the packed RGB sampled pixels
+     * @param rowStart    the index of the first sampled pixel of the row
+     * @param imageWidth  the width of the image
+     * @param subsampling the subsampling factor the row was sampled with, 1 for every pixel
+     */
+    void addRow(int imageRow, int[] pixels, int rowStart, int imageWidth, int subsampling) {
+        int tileRow = (imageRow + heightPadding) / tileSize;
+        long[] lumaRow = luma[tileRow];
+        LumaKernel kernel = LumaKernel.get();
+        for (int col = 0; col < lumaRow.length; col++) {
+            int from = rowStart + ceilDiv(Math.max(0, col * tileSize - widthPadding), subsampling);
+            int to = rowStart + ceilDiv(Math.min(imageWidth, (col + 1) * tileSize - widthPadding),
+                    subsampling);
+            lumaRow[col] += kernel.sum(pixels, from, to);
+            if (red != null) {
+                long redSum = 0, greenSum = 0, blueSum = 0;
+                for (int j = from; j < to; j++) {
+                    redSum += Image.red(pixels[j]);
+                    greenSum += Image.green(pixels[j]);
+                    blueSum += Image.blue(pixels[j]);
+                }
+                red[tileRow][col] += redSum;
+                green[tileRow][col] += greenSum;
+                blue[tileRow][col] += blueSum;
+            }
+        }
+    }
+
+    /**
+     * Divides a non-negative number, rounding up.
+     *
+     * @param num     the dividend
+     * @param divisor the divisor
+     * @return the rounded up quotient
+     */
+    static int ceilDiv(int num, int divisor) {
+        return (num + divisor - 1) / divisor;
+    }
+}
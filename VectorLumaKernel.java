@@ -0,0 +1,80 @@
+package image;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * A luma kernel unpacking the channels of packed RGB pixels and weighting them in vector lanes,
+ * with the preferred vector size of the platform. Only loaded through {@link LumaKernel#get()}
+ * when the jdk.incubator.vector module is available. Results are identical to the scalar kernel.
+ */
+class VectorLumaKernel extends LumaKernel {
+    // the preferred int vector shape.
+    private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+
+    // mask of a color channel.
+    private static final int CHANNEL_MASK = 0xFF;
+
+    // bit offset of the red channel in a packed RGB value.
+    private static final int RED_SHIFT = 16;
+
+    // bit offset of the green channel in a packed RGB value.
+    private static final int GREEN_SHIFT = 8;
+
+    // pixels summed in int lanes before they are flushed into the long sum. Lanes are reduced in
+    // int arithmetic, so all of them together sum at most 2^9 lumas under 2^22, staying under 2^31.
+    private static final int PIXELS_PER_FLUSH = 1 << 9;
+
+    /**
+     * Constructs the kernel, reflectively from {@link LumaKernel#get()}.
+     */
+    VectorLumaKernel() {
+    }
+
+    @Override
+    long sum(int[] pixels, int from, int to) {
+        long sum = 0;
+        int i = from;
+        int vectorEnd = from + SPECIES.loopBound(to - from);
+        while (i < vectorEnd) {
+            int flushEnd = Math.min(vectorEnd, i + PIXELS_PER_FLUSH);
+            IntVector lanes = IntVector.zero(SPECIES);
+            for (; i < flushEnd; i += SPECIES.length()) {
+                lanes = lanes.add(luma(IntVector.fromArray(SPECIES, pixels, i)));
+            }
+            sum += lanes.reduceLanesToLong(VectorOperators.ADD);
+        }
+        return sum + super.sum(pixels, i, to);
+    }
+
+    @Override
+    void luma(int[] pixels, int from, int to, int[] dest, int destPos) {
+        int i = from;
+        int vectorEnd = from + SPECIES.loopBound(to - from);
+        for (; i < vectorEnd; i += SPECIES.length()) {
+            luma(IntVector.fromArray(SPECIES, pixels, i)).intoArray(dest, destPos + i - from);
+        }
+        super.luma(pixels, i, to, dest, destPos + i - from);
+    }
+
+    @Override
+    String getName() {
+        return "vector " + SPECIES.vectorBitSize() + " bit";
+    }
+
+    /**
+     * Computes the fixed-point luma of the packed RGB pixels of every lane.
+     *
+     * @param rgb the packed RGB pixels
+     * @return the luma of every lane
+     */
+    private static IntVector luma(IntVector rgb) {
+        IntVector red = rgb.lanewise(VectorOperators.LSHR, RED_SHIFT).and(CHANNEL_MASK);
+        IntVector green = rgb.lanewise(VectorOperators.LSHR, GREEN_SHIFT).and(CHANNEL_MASK);
+        IntVector blue = rgb.and(CHANNEL_MASK);
+        return red.mul(ImageManager.RED_FACTOR)
+                .add(green.mul(ImageManager.GREEN_FACTOR))
+                .add(blue.mul(ImageManager.BLUE_FACTOR));
+    }
+}
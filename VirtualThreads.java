@@ -0,0 +1,48 @@
+package ascii_art;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Creates executors running each task on its own virtual thread when the runtime supports them
+ * (Java 21 and later), and on a pool of platform threads otherwise.
+ */
+public class VirtualThreads {
+    // name of the virtual thread executor factory method of Executors.
+    private static final String VIRTUAL_EXECUTOR_FACTORY = "newVirtualThreadPerTaskExecutor";
+
+    /**
+     * Private constructor, the class only has static methods.
+     */
+    private VirtualThreads() {
+    }
+
+    /**
+     * Creates an executor starting a new thread per task, virtual if the runtime supports it.
+     *
+     * @return the executor
+     */
+    public static ExecutorService newThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod(VIRTUAL_EXECUTOR_FACTORY).invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    /**
+     * Creates an executor starting a new virtual thread per task if the runtime supports it, and
+     * otherwise running at most the given number of tasks at once on platform threads, queueing
+     * the others, so submitting many blocking tasks never starts as many platform threads.
+     *
+     * @param maxPlatformThreads the number of platform threads when virtual threads are unavailable
+     * @return the executor
+     */
+    public static ExecutorService newThreadPerTaskExecutor(int maxPlatformThreads) {
+        try {
+            return (ExecutorService) Executors.class.getMethod(VIRTUAL_EXECUTOR_FACTORY).invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newFixedThreadPool(maxPlatformThreads);
+        }
+    }
+}
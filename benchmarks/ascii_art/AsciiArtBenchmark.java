@@ -0,0 +1,95 @@
+package ascii_art;
+
+import image.BrightnessMapCache;
+import image.ImageManager;
+import image.SyntheticImages;
+import image_char_matching.SubImgCharMatcher;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks AsciiArtAlgorithm.run on the brightness map of a synthetic image, at several
+ * resolutions and with the small and full charsets, sequentially and on the common pool.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AsciiArtBenchmark {
+    // width of the synthetic image.
+    private static final int IMAGE_WIDTH = 2048;
+
+    // first printable ASCII character.
+    private static final char MINIMUM_ASCII_VALUE = 32;
+
+    // character after the last printable ASCII character.
+    private static final char MAXIMUM_ASCII_VALUE = 127;
+
+    // the resolution of the brightness map.
+    @Param({"128", "512"})
+    public int resolution;
+
+    // the charset: "small" for the digits, "full" for every printable ASCII character.
+    @Param({"small", "full"})
+    public String charset;
+
+    // the brightness map.
+    private double[][] brightnessMap;
+
+    // the char matcher.
+    private SubImgCharMatcher matcher;
+
+    /**
+     * Computes the brightness map and builds the char matcher.
+     *
+     * @throws IOException if the synthetic image cannot be written or read
+     */
+    @Setup
+    public void setUp() throws IOException {
+        String file = SyntheticImages.write(IMAGE_WIDTH, IMAGE_WIDTH * 3 / 4).toString();
+        brightnessMap = new ImageManager(file, resolution, new BrightnessMapCache(0)).getBrightnessMap();
+        char[] chars;
+        if (charset.equals("small")) {
+            chars = "0123456789".toCharArray();
+        } else {
+            chars = new char[MAXIMUM_ASCII_VALUE - MINIMUM_ASCII_VALUE];
+            for (char c = MINIMUM_ASCII_VALUE; c < MAXIMUM_ASCII_VALUE; c++) {
+                chars[c - MINIMUM_ASCII_VALUE] = c;
+            }
+        }
+        matcher = new SubImgCharMatcher(chars);
+    }
+
+    /**
+     * Renders the brightness map on the calling thread.
+     */
+    @Benchmark
+    public char[][] runSequential() throws EmptyCharsetException {
+        return new AsciiArtAlgorithm(brightnessMap, matcher, null).run();
+    }
+
+    /**
+     * Renders the brightness map in row bands on the common pool.
+     */
+    @Benchmark
+    public char[][] runParallel() throws EmptyCharsetException {
+        AsciiArtAlgorithm algorithm = new AsciiArtAlgorithm(brightnessMap, matcher, ForkJoinPool.commonPool());
+        algorithm.setParallelThreshold(0);
+        return algorithm.run();
+    }
+}
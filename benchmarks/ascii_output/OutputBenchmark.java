@@ -0,0 +1,128 @@
+package ascii_output;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks both AsciiOutput implementations on random ASCII art (including characters the HTML
+ * output escapes) of several widths: HTML to a file, plain and gzip compressed, HTML to a stream,
+ * and console text to a discarding stream.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OutputBenchmark {
+    // seed of the ASCII art.
+    private static final long SEED = 42;
+
+    // first printable ASCII character.
+    private static final char MINIMUM_ASCII_VALUE = 32;
+
+    // number of printable ASCII characters.
+    private static final int PRINTABLE_ASCII_CHARS = 95;
+
+    // font of the HTML output.
+    private static final String HTML_FONT = "Courier New";
+
+    // the number of columns of the ASCII art.
+    @Param({"128", "512", "1024"})
+    public int columns;
+
+    // the ASCII art.
+    private char[][] asciiArt;
+
+    // the temporary HTML file.
+    private Path htmlFile;
+
+    // HTML output to the temporary file.
+    private HtmlAsciiOutput htmlOutput;
+
+    // gzip compressed HTML output to the temporary file.
+    private HtmlAsciiOutput gzipOutput;
+
+    // console output discarding its text.
+    private ConsoleAsciiOutput consoleOutput;
+
+    /**
+     * Builds the ASCII art and the outputs.
+     *
+     * @throws IOException if the temporary file cannot be created
+     */
+    @Setup
+    public void setUp() throws IOException {
+        Random random = new Random(SEED);
+        asciiArt = new char[columns / 2][columns];
+        for (char[] row : asciiArt) {
+            for (int x = 0; x < row.length; x++) {
+                row[x] = (char) (MINIMUM_ASCII_VALUE + random.nextInt(PRINTABLE_ASCII_CHARS));
+            }
+        }
+        htmlFile = Files.createTempFile("benchmark", ".html");
+        htmlOutput = new HtmlAsciiOutput(htmlFile.toString(), HTML_FONT);
+        gzipOutput = new HtmlAsciiOutput(htmlFile.toString(), HTML_FONT, true);
+        consoleOutput = new ConsoleAsciiOutput(OutputStream.nullOutputStream());
+    }
+
+    /**
+     * Deletes the temporary files.
+     *
+     * @throws IOException if a file cannot be deleted
+     */
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(htmlFile);
+        Files.deleteIfExists(Path.of(htmlFile + ".gz"));
+    }
+
+    /**
+     * Writes the HTML file.
+     */
+    @Benchmark
+    public void htmlFile() {
+        htmlOutput.out(asciiArt);
+    }
+
+    /**
+     * Writes the gzip compressed HTML file.
+     */
+    @Benchmark
+    public void htmlGzipFile() {
+        gzipOutput.out(asciiArt);
+    }
+
+    /**
+     * Writes the HTML document to a discarding stream.
+     */
+    @Benchmark
+    public void htmlStream() throws IOException {
+        htmlOutput.writeTo(OutputStream.nullOutputStream(), asciiArt, null);
+    }
+
+    /**
+     * Writes the console text to a discarding stream.
+     */
+    @Benchmark
+    public void console() {
+        consoleOutput.out(asciiArt);
+    }
+}
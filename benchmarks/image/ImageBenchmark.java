@@ -0,0 +1,131 @@
+package image;
+
+import ascii_art.ResolutionExceedingBoundariesException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the image side of the pipeline on synthetic 4:3 images of several sizes:
+ * decoding, building the summed-area table, computing a brightness map from scratch (decode,
+ * summed-area table and virtually padded tiles) and answering the tiles of a brightness map from an
+ * already built summed-area table or resolution pyramid, or together with tile colors in a pass
+ * over every pixel.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ImageBenchmark {
+    // resolution of the brightness maps.
+    private static final int RESOLUTION = 128;
+
+    // width of the synthetic image.
+    @Param({"256", "1024", "4096"})
+    public int width;
+
+    // the synthetic image file.
+    private Path file;
+
+    // the decoded synthetic image.
+    private Image image;
+
+    // image manager whose summed-area table is built, without brightness cache nor pyramid.
+    private ImageManager warmManager;
+
+    // image manager whose resolution pyramid is built, without brightness cache.
+    private ImageManager pyramidManager;
+
+    // decoded image manager computing tile colors, so tiles come from a pass over every pixel.
+    private ImageManager colorManager;
+
+    /**
+     * Writes the synthetic image and prepares the decoded image and the warm image manager.
+     *
+     * @throws IOException                            if the image cannot be written or read
+     * @throws ResolutionExceedingBoundariesException if the resolution is invalid for the image
+     */
+    @Setup
+    public void setUp() throws IOException, ResolutionExceedingBoundariesException {
+        file = SyntheticImages.write(width, width * 3 / 4);
+        image = new Image(file.toString());
+        warmManager = new ImageManager(file.toString(), RESOLUTION, new BrightnessMapCache(0));
+        warmManager.setFullFidelity(true);
+        warmManager.setPyramidMaxBytes(0);
+        warmManager.setImage(file.toString());
+        pyramidManager = new ImageManager(file.toString(), RESOLUTION, new BrightnessMapCache(0));
+        pyramidManager.setFullFidelity(true);
+        pyramidManager.setPyramidMaxBytes(Long.MAX_VALUE);
+        pyramidManager.setEagerPyramid(true);
+        pyramidManager.setImage(file.toString());
+        colorManager = new ImageManager(file.toString(), RESOLUTION, new BrightnessMapCache(0));
+        colorManager.setFullFidelity(true);
+        colorManager.setColors(true);
+        colorManager.setImage(file.toString());
+    }
+
+    /**
+     * Decodes the image file into a raster.
+     */
+    @Benchmark
+    public Image decode() throws IOException {
+        return new Image(file.toString());
+    }
+
+    /**
+     * Builds the summed-area table of the decoded image.
+     */
+    @Benchmark
+    public SummedAreaTable summedAreaTable() {
+        return new SummedAreaTable(image);
+    }
+
+    /**
+     * Computes a brightness map from the file, without any cache.
+     */
+    @Benchmark
+    public double[][] coldBrightnessMap() throws IOException {
+        return new ImageManager(file.toString(), RESOLUTION, new BrightnessMapCache(0)).getBrightnessMap();
+    }
+
+    /**
+     * Computes the brightness of every tile from the already built summed-area table.
+     */
+    @Benchmark
+    public double[][] tileBrightness() throws ResolutionExceedingBoundariesException {
+        warmManager.setResolution(RESOLUTION);
+        return warmManager.getBrightnessMap();
+    }
+
+    /**
+     * Looks up the brightness map in the already built resolution pyramid.
+     */
+    @Benchmark
+    public double[][] pyramidBrightness() throws ResolutionExceedingBoundariesException {
+        pyramidManager.setResolution(RESOLUTION);
+        return pyramidManager.getBrightnessMap();
+    }
+
+    /**
+     * Computes the brightness and color of every tile in a single pass over the decoded pixels.
+     */
+    @Benchmark
+    public int[][] tileColors() throws ResolutionExceedingBoundariesException {
+        colorManager.setResolution(RESOLUTION);
+        return colorManager.getColorMap();
+    }
+}
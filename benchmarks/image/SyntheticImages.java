@@ -0,0 +1,83 @@
+package image;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+/**
+ * Generates deterministic synthetic images for the benchmarks: color gradients with concentric
+ * rings and noise, so tiles get a spread of brightness values and decoders real work.
+ */
+public class SyntheticImages {
+    // seed of the noise.
+    private static final long SEED = 42;
+
+    // amplitude of the noise added to every channel.
+    private static final int NOISE = 32;
+
+    // width of a ring, in pixels.
+    private static final int RING_WIDTH = 24;
+
+    // max RGB value.
+    private static final int MAX_RGB_VALUE = 255;
+
+    /**
+     * Private constructor, the class only has static methods.
+     */
+    private SyntheticImages() {
+    }
+
+    /**
+     * Generates a synthetic image.
+     *
+     * @param width  the width of the image
+     * @param height the height of the image
+     * @return the image
+     */
+    public static BufferedImage generate(int width, int height) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Random random = new Random(SEED);
+        int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int dx = x - width / 2;
+                int dy = y - height / 2;
+                int ring = (int) Math.sqrt(dx * dx + dy * dy) / RING_WIDTH % 2 * MAX_RGB_VALUE / 2;
+                int red = clamp(x * MAX_RGB_VALUE / width + ring / 2 + random.nextInt(NOISE));
+                int green = clamp(y * MAX_RGB_VALUE / height + random.nextInt(NOISE));
+                int blue = clamp(ring + random.nextInt(NOISE));
+                row[x] = red << 16 | green << 8 | blue;
+            }
+            image.setRGB(0, y, width, 1, row, 0, width);
+        }
+        return image;
+    }
+
+    /**
+     * Generates a synthetic image and writes it to a temporary PNG file, deleted on exit.
+     *
+     * @param width  the width of the image
+     * @param height the height of the image
+     * @return the path of the file
+     * @throws IOException if the file cannot be written
+     */
+    public static Path write(int width, int height) throws IOException {
+        Path file = Files.createTempFile("synthetic_" + width + "x" + height, ".png");
+        file.toFile().deleteOnExit();
+        ImageIO.write(generate(width, height), "png", file.toFile());
+        return file;
+    }
+
+    /**
+     * Clamps a channel value to [0, 255].
+     *
+     * @param value the value
+     * @return the clamped value
+     */
+    private static int clamp(int value) {
+        return Math.min(MAX_RGB_VALUE, Math.max(0, value));
+    }
+}
@@ -0,0 +1,92 @@
+package image_char_matching;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks SubImgCharMatcher.getCharByImageBrightness with the default digits charset and with
+ * every printable ASCII character, answered from the lookup table or by the exact binary search.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CharMatcherBenchmark {
+    // number of brightness values looked up per invocation.
+    private static final int LOOKUPS = 4096;
+
+    // seed of the brightness values.
+    private static final long SEED = 42;
+
+    // first printable ASCII character.
+    private static final char MINIMUM_ASCII_VALUE = 32;
+
+    // character after the last printable ASCII character.
+    private static final char MAXIMUM_ASCII_VALUE = 127;
+
+    // the charset: "small" for the digits, "full" for every printable ASCII character.
+    @Param({"small", "full"})
+    public String charset;
+
+    // how lookups are answered: "table" for the lookup table, "search" for the binary search.
+    @Param({"table", "search"})
+    public String lookup;
+
+    // the char matcher.
+    private SubImgCharMatcher matcher;
+
+    // the looked up brightness values.
+    private double[] brightness;
+
+    /**
+     * Builds the char matcher and the brightness values.
+     */
+    @Setup
+    public void setUp() {
+        char[] chars;
+        if (charset.equals("small")) {
+            chars = "0123456789".toCharArray();
+        } else {
+            chars = new char[MAXIMUM_ASCII_VALUE - MINIMUM_ASCII_VALUE];
+            for (char c = MINIMUM_ASCII_VALUE; c < MAXIMUM_ASCII_VALUE; c++) {
+                chars[c - MINIMUM_ASCII_VALUE] = c;
+            }
+        }
+        matcher = new SubImgCharMatcher(chars);
+        if (lookup.equals("search")) {
+            matcher.setLookupTableBuckets(0);
+        }
+        brightness = new double[LOOKUPS];
+        Random random = new Random(SEED);
+        for (int i = 0; i < LOOKUPS; i++) {
+            brightness[i] = random.nextDouble();
+        }
+    }
+
+    /**
+     * Looks up the char of every brightness value.
+     */
+    @Benchmark
+    @OperationsPerInvocation(LOOKUPS)
+    public void getCharByImageBrightness(Blackhole blackhole) {
+        for (double value : brightness) {
+            blackhole.consume(matcher.getCharByImageBrightness(value));
+        }
+    }
+}
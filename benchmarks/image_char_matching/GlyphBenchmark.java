@@ -0,0 +1,75 @@
+package image_char_matching;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks rendering the glyphs of a 1024 character charset with CharConverter, one character
+ * at a time on the calling thread or the whole charset in parallel.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GlyphBenchmark {
+    // number of characters of the charset.
+    private static final int CHARSET_SIZE = 1024;
+
+    // first character of the charset.
+    private static final char FIRST_CHAR = 32;
+
+    // the pixel resolution of the rendered glyphs.
+    @Param({"16", "32"})
+    public int pixelResolution;
+
+    // the converter rendering the glyphs.
+    private CharConverter charConverter;
+
+    // the charset.
+    private char[] chars;
+
+    /**
+     * Builds the converter and the charset.
+     */
+    @Setup
+    public void setUp() {
+        charConverter = new CharConverter(CharConverter.DEFAULT_FONT_NAME, pixelResolution);
+        chars = new char[CHARSET_SIZE];
+        for (int i = 0; i < CHARSET_SIZE; i++) {
+            chars[i] = (char) (FIRST_CHAR + i);
+        }
+    }
+
+    /**
+     * Counts the white pixels of every character, one at a time.
+     */
+    @Benchmark
+    public int[] sequential() {
+        int[] counts = new int[chars.length];
+        for (int i = 0; i < chars.length; i++) {
+            counts[i] = charConverter.countWhitePixels(chars[i]);
+        }
+        return counts;
+    }
+
+    /**
+     * Counts the white pixels of the whole charset in parallel.
+     */
+    @Benchmark
+    public int[] parallel() {
+        return charConverter.countWhitePixels(chars);
+    }
+}
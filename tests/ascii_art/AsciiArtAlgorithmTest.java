@@ -0,0 +1,51 @@
+package ascii_art;
+
+import image_char_matching.SubImgCharMatcher;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+/**
+ * Checks that rendering bands of rows in parallel gives exactly the sequential ASCII art.
+ */
+class AsciiArtAlgorithmTest {
+    private static final long SEED = 7;
+
+    // a charset of spread brightness values.
+    private static final char[] CHARSET = "@#%*+=-:. ".toCharArray();
+
+    // threads of the pool, more than one even on a single core.
+    private static final int PARALLELISM = 4;
+
+    @Test
+    void parallelMatchesSequential() throws EmptyCharsetException {
+        // several bands at the default threshold, including an odd number of rows
+        double[][] brightnessMap = randomMap(301, 256);
+        SubImgCharMatcher matcher = new SubImgCharMatcher(CHARSET);
+        char[][] sequential = new AsciiArtAlgorithm(brightnessMap, matcher).run();
+        ForkJoinPool pool = new ForkJoinPool(PARALLELISM);
+        try {
+            for (int threshold : new int[]{AsciiArtAlgorithm.DEFAULT_PARALLEL_THRESHOLD, 1}) {
+                AsciiArtAlgorithm parallel = new AsciiArtAlgorithm(brightnessMap, matcher, pool);
+                parallel.setParallelThreshold(threshold);
+                assertArrayEquals(sequential, parallel.run(), "threshold " + threshold);
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static double[][] randomMap(int rows, int columns) {
+        Random random = new Random(SEED);
+        double[][] map = new double[rows][columns];
+        for (double[] row : map) {
+            for (int j = 0; j < columns; j++) {
+                row[j] = random.nextDouble();
+            }
+        }
+        return map;
+    }
+}
@@ -0,0 +1,73 @@
+package ascii_art;
+
+import image_char_matching.SubImgCharMatcher;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks the files written by the batch converter.
+ */
+class BatchConverterTest {
+    // a dark and a light char.
+    private static final char[] CHARSET = {'@', ' '};
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void writesGzipCompressedHtml() throws Exception {
+        Path image = writeHalfBlackImage("half.png");
+        Path output = Files.createDirectory(dir.resolve("out"));
+        BatchConverter converter = new BatchConverter(new SubImgCharMatcher(CHARSET), new int[]{2}, output,
+                BatchConverter.GZIP_HTML_FORMAT);
+        assertEquals(1, converter.convert(List.of(image)));
+        try (InputStream input = new GZIPInputStream(Files.newInputStream(output.resolve("half.png_2.html.gz")))) {
+            String html = new String(input.readAllBytes(), StandardCharsets.UTF_8);
+            assertTrue(html.startsWith("<!DOCTYPE html>"), html);
+            assertTrue(html.contains("@ "), html);
+        }
+    }
+
+    @Test
+    void countsFailedWritesAsFailures() throws Exception {
+        Path image = writeHalfBlackImage("half.png");
+        Path output = Files.createDirectory(dir.resolve("out"));
+        for (String format : new String[]{BatchConverter.HTML_FORMAT, BatchConverter.TEXT_FORMAT}) {
+            // a directory in place of the output file makes the write fail
+            String extension = format.equals(BatchConverter.TEXT_FORMAT) ? "txt" : format;
+            Files.createDirectory(output.resolve("half.png_2." + extension));
+            BatchConverter converter = new BatchConverter(new SubImgCharMatcher(CHARSET), new int[]{2}, output,
+                    format);
+            assertEquals(0, converter.convert(List.of(image)), format);
+        }
+    }
+
+    /**
+     * Writes an image with a black left half and a white right half, one row of two tiles at
+     * resolution 2.
+     */
+    private Path writeHalfBlackImage(String name) throws IOException {
+        BufferedImage image = new BufferedImage(64, 32, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = image.getWidth() / 2; x < image.getWidth(); x++) {
+                image.setRGB(x, y, 0xFFFFFF);
+            }
+        }
+        Path file = dir.resolve(name);
+        ImageIO.write(image, "png", file.toFile());
+        return file;
+    }
+}
@@ -0,0 +1,165 @@
+package ascii_art;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks conversions, upload limits and admission control of the conversion server.
+ */
+class ConversionServerTest {
+    // conversions that may wait for a worker.
+    private static final int QUEUE_CAPACITY = 1;
+
+    // requests admitted at once: a worker per core and the queue.
+    private static final int MAX_ADMITTED = Runtime.getRuntime().availableProcessors() + QUEUE_CAPACITY;
+
+    // declared length of the uploads held open by the admission test.
+    private static final int HELD_UPLOAD_BYTES = 1000;
+
+    // declared length above the largest accepted upload.
+    private static final long TOO_LARGE_UPLOAD_BYTES = 64L * 1024 * 1024 + 1;
+
+    // time between two metrics polls, in milliseconds.
+    private static final long POLL_MILLIS = 10;
+
+    // longest wait for the held uploads to be admitted, and for a response.
+    private static final Duration ADMISSION_TIMEOUT = Duration.ofSeconds(10);
+
+    private ConversionServer server;
+
+    private final HttpClient client = HttpClient.newHttpClient();
+
+    @BeforeEach
+    void start() throws IOException {
+        server = new ConversionServer(0, QUEUE_CAPACITY);
+        server.start();
+    }
+
+    @AfterEach
+    void stop() {
+        server.stop(0);
+    }
+
+    @Test
+    void convertsUploadedImage() throws Exception {
+        // a black left half and a white right half, one row of two tiles at resolution 2
+        BufferedImage image = new BufferedImage(64, 32, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = image.getWidth() / 2; x < image.getWidth(); x++) {
+                image.setRGB(x, y, 0xFFFFFF);
+            }
+        }
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", png);
+        HttpResponse<String> response = client.send(
+                HttpRequest.newBuilder(uri("/convert?res=2&charset=%40%20&output=text"))
+                        .POST(HttpRequest.BodyPublishers.ofByteArray(png.toByteArray())).build(),
+                HttpResponse.BodyHandlers.ofString());
+        assertEquals(200, response.statusCode());
+        assertEquals("@   \n", response.body());
+        HttpResponse<String> html = client.send(
+                HttpRequest.newBuilder(uri("/convert?res=2&charset=%40%20&output=html"))
+                        .POST(HttpRequest.BodyPublishers.ofByteArray(png.toByteArray())).build(),
+                HttpResponse.BodyHandlers.ofString());
+        assertEquals(200, html.statusCode());
+        assertTrue(html.body().contains("@"), html.body());
+    }
+
+    @Test
+    void rejectsInvalidRequests() throws Exception {
+        assertEquals(400, post("/convert?res=x", new byte[1]).statusCode());
+        assertEquals(400, post("/convert?output=pdf", new byte[1]).statusCode());
+        assertEquals(415, post("/convert?res=2", new byte[]{1, 2, 3}).statusCode());
+        assertEquals(405, client.send(HttpRequest.newBuilder(uri("/convert")).GET().build(),
+                HttpResponse.BodyHandlers.ofString()).statusCode());
+    }
+
+    @Test
+    void refusesOversizedUploadUnread() throws Exception {
+        try (Socket socket = openUpload(TOO_LARGE_UPLOAD_BYTES)) {
+            assertEquals(413, readStatus(socket));
+        }
+    }
+
+    @Test
+    void rejectsRequestsBeyondAdmissionBeforeReadingThem() throws Exception {
+        List<Socket> held = new ArrayList<>();
+        try {
+            // uploads that never finish hold their admission
+            for (int i = 0; i < MAX_ADMITTED; i++) {
+                held.add(openUpload(HELD_UPLOAD_BYTES));
+            }
+            assertTimeoutPreemptively(ADMISSION_TIMEOUT, () -> {
+                while (!metrics().contains("admitted " + MAX_ADMITTED + "\n")) {
+                    Thread.sleep(POLL_MILLIS);
+                }
+            });
+            try (Socket socket = openUpload(HELD_UPLOAD_BYTES)) {
+                assertEquals(429, readStatus(socket));
+            }
+            assertTrue(metrics().contains("rejected 1\n"));
+        } finally {
+            for (Socket socket : held) {
+                socket.close();
+            }
+        }
+    }
+
+    private HttpResponse<String> post(String path, byte[] body) throws Exception {
+        return client.send(HttpRequest.newBuilder(uri(path)).POST(HttpRequest.BodyPublishers.ofByteArray(body))
+                .build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private String metrics() throws Exception {
+        return client.send(HttpRequest.newBuilder(uri("/metrics")).GET().build(),
+                HttpResponse.BodyHandlers.ofString()).body().replace(System.lineSeparator(), "\n");
+    }
+
+    private URI uri(String path) {
+        return URI.create("http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort()
+                + path);
+    }
+
+    /**
+     * Sends the headers of a conversion request declaring a body of the given length, and a single
+     * byte of that body.
+     */
+    private Socket openUpload(long contentLength) throws IOException {
+        Socket socket = new Socket(server.getAddress().getAddress(), server.getAddress().getPort());
+        socket.setSoTimeout((int) ADMISSION_TIMEOUT.toMillis());
+        OutputStream out = socket.getOutputStream();
+        out.write(("POST /convert?res=2 HTTP/1.1\r\nHost: localhost\r\nContent-Length: " + contentLength +
+                "\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+        out.write(0);
+        out.flush();
+        return socket;
+    }
+
+    private static int readStatus(Socket socket) throws IOException {
+        BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(),
+                StandardCharsets.US_ASCII));
+        return Integer.parseInt(in.readLine().split(" ")[1]);
+    }
+}
@@ -0,0 +1,114 @@
+package ascii_art;
+
+import image.BrightnessMapCache;
+import image.ImageManager;
+import image_char_matching.SubImgCharMatcher;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that frames converted from the ASCII art of their previous frame get the ASCII art of
+ * their images converted on their own, and that the shell animates them.
+ */
+class FrameConverterTest {
+    // frame size.
+    private static final int WIDTH = 128, HEIGHT = 64;
+
+    // number of frames, including a repeated one.
+    private static final int FRAMES = 5;
+
+    // a charset of spread brightness values.
+    private static final char[] CHARSET = "@#%*+=-:. ".toCharArray();
+
+    // clears the screen and moves the cursor home, starting the first animated frame.
+    private static final String CLEAR_SCREEN = "\033[2J\033[H";
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void framesMatchSeparateConversions() throws Exception {
+        Path[] files = writeFrames();
+        SubImgCharMatcher matcher = new SubImgCharMatcher(CHARSET);
+        for (int resolution : new int[]{4, 16, 64, 128}) {
+            ImageManager imageManager = ImageManager.open(files[0].toString(), resolution, new BrightnessMapCache(0));
+            List<char[][]> asciiArts = new FrameConverter(matcher)
+                    .convertAll(imageManager.openFrames(files[0].getParent().toString()));
+            assertEquals(FRAMES, asciiArts.size());
+            for (int k = 0; k < FRAMES; k++) {
+                ImageManager reference = ImageManager.open(files[k].toString(), resolution, new BrightnessMapCache(0));
+                char[][] expected = new AsciiArtAlgorithm(reference.getBrightnessMap(), matcher).run();
+                assertArrayEquals(expected, asciiArts.get(k), files[k] + " at " + resolution);
+            }
+        }
+    }
+
+    @Test
+    void emptyCharsetFails() throws Exception {
+        Path[] files = writeFrames();
+        ImageManager imageManager = ImageManager.open(files[0].toString(), 4, new BrightnessMapCache(0));
+        FrameConverter converter = new FrameConverter(new SubImgCharMatcher(new char[0]));
+        assertThrows(EmptyCharsetException.class,
+                () -> converter.convertAll(imageManager.openFrames(files[0].getParent().toString())));
+    }
+
+    @Test
+    void shellAnimatesFrames() throws Exception {
+        Path[] files = writeFrames();
+        Shell shell = new Shell(files[0].toString());
+        ByteArrayOutputStream captured = new ByteArrayOutputStream();
+        PrintStream stdout = System.out;
+        System.setOut(new PrintStream(captured, true, StandardCharsets.UTF_8));
+        try {
+            shell.runCommand("animate " + files[0].getParent());
+        } finally {
+            System.setOut(stdout);
+        }
+        String output = captured.toString(StandardCharsets.UTF_8);
+        assertTrue(output.startsWith(CLEAR_SCREEN), output);
+        assertFalse(output.contains("Did not"), output);
+    }
+
+    /**
+     * Writes numbered frames of a gradient, every frame moving a dark square, and the fourth frame
+     * repeating the third.
+     */
+    private Path[] writeFrames() throws IOException {
+        Path frames = Files.createDirectories(dir.resolve("frames"));
+        BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                int gray = x * 0xFF / WIDTH;
+                image.setRGB(x, y, gray << 16 | gray << 8 | gray);
+            }
+        }
+        Path[] files = new Path[FRAMES];
+        for (int k = 0; k < FRAMES; k++) {
+            int step = k == 3 ? 2 : k;
+            for (int y = 8; y < 24; y++) {
+                for (int x = 20 * step; x < 20 * step + 20; x++) {
+                    image.setRGB(x, y, 0x101010 * step);
+                }
+            }
+            files[k] = frames.resolve("frame" + k + ".png");
+            ImageIO.write(image, "png", files[k].toFile());
+        }
+        return files;
+    }
+}
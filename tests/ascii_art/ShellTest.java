@@ -0,0 +1,86 @@
+package ascii_art;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * Checks that the shell reuses its last ASCII art while nothing changed, and renders exactly the
+ * ASCII art of a fresh shell once the charset, resolution or image changed.
+ */
+class ShellTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    void reusesAsciiArtWhileNothingChanged() throws Exception {
+        Shell shell = new Shell(writeGradient("image", 0).toString());
+        char[][] asciiArt = shell.renderAsciiArt();
+        assertSame(asciiArt, shell.renderAsciiArt());
+        // commands changing nothing, or failing, keep the ascii art
+        for (String command : new String[]{"chars", "add 0", "remove x", "res", "res sideways", "color on"}) {
+            shell.runCommand(command);
+            assertSame(asciiArt, shell.renderAsciiArt(), command);
+        }
+    }
+
+    @Test
+    void rendersAgainAfterCharsetChange() throws Exception {
+        assertRendersAsFreshShell("add a");
+        assertRendersAsFreshShell("remove 0");
+    }
+
+    @Test
+    void rendersAgainAfterResolutionChange() throws Exception {
+        assertRendersAsFreshShell("res down");
+        assertRendersAsFreshShell("res down", "res up");
+    }
+
+    @Test
+    void rendersAgainAfterImageChange() throws Exception {
+        assertRendersAsFreshShell("image " + writeGradient("other", 0x40));
+    }
+
+    /**
+     * Runs commands after a first rendering, and checks that the next rendering is new and equals
+     * the rendering of a shell that ran them before rendering anything.
+     */
+    private void assertRendersAsFreshShell(String... commands) throws IOException, EmptyCharsetException {
+        String image = writeGradient("image", 0).toString();
+        Shell shell = new Shell(image);
+        char[][] asciiArt = shell.renderAsciiArt();
+        Shell fresh = new Shell(image);
+        for (String command : commands) {
+            shell.runCommand(command);
+            fresh.runCommand(command);
+        }
+        char[][] rendered = shell.renderAsciiArt();
+        String message = String.join(", ", commands);
+        assertNotSame(asciiArt, rendered, message);
+        assertArrayEquals(fresh.renderAsciiArt(), rendered, message);
+    }
+
+    /**
+     * Writes a 512x256 PNG of a diagonal gradient, shifted by the given offset.
+     */
+    private Path writeGradient(String name, int offset) throws IOException {
+        BufferedImage image = new BufferedImage(512, 256, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                int gray = ((x + y) / 3 + offset) & 0xFF;
+                image.setRGB(x, y, gray << 16 | gray << 8 | gray);
+            }
+        }
+        Path file = dir.resolve(name + ".png");
+        ImageIO.write(image, "png", file.toFile());
+        return file;
+    }
+}
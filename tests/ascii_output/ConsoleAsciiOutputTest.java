@@ -0,0 +1,60 @@
+package ascii_output;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Checks that console frames go to the current System.out, in the console layout, written in
+ * whole buffers rather than row by row.
+ */
+class ConsoleAsciiOutputTest {
+    // a frame of many rows, smaller than the output buffer.
+    private static final int ROWS = 100, COLUMNS = 100;
+
+    @Test
+    void writesFrameToRedirectedStdoutInOneWrite() {
+        char[][] chars = new char[ROWS][COLUMNS];
+        StringBuilder expected = new StringBuilder();
+        for (int y = 0; y < ROWS; y++) {
+            for (int x = 0; x < COLUMNS; x++) {
+                chars[y][x] = (char) ('a' + (x + y) % 26);
+                expected.append(chars[y][x]).append(' ');
+            }
+            expected.append(System.lineSeparator());
+        }
+        CountingStream captured = new CountingStream();
+        PrintStream stdout = System.out;
+        System.setOut(new PrintStream(captured, true));
+        try {
+            new ConsoleAsciiOutput().out(chars);
+        } finally {
+            System.setOut(stdout);
+        }
+        assertEquals(expected.toString(), captured.toString(StandardCharsets.US_ASCII));
+        assertEquals(1, captured.writes);
+    }
+
+    /**
+     * A stream counting the writes it receives.
+     */
+    private static class CountingStream extends ByteArrayOutputStream {
+        private int writes;
+
+        @Override
+        public synchronized void write(byte[] b, int off, int len) {
+            writes++;
+            super.write(b, off, len);
+        }
+
+        @Override
+        public synchronized void write(int b) {
+            writes++;
+            super.write(b);
+        }
+    }
+}
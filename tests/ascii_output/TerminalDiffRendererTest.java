@@ -0,0 +1,102 @@
+package ascii_output;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Checks the escape sequences and chars written by the terminal renderer for successive frames.
+ */
+class TerminalDiffRendererTest {
+    // height of a terminal fitting the test frames.
+    private static final int TERMINAL_ROWS = 24;
+
+    // clears the screen and moves the cursor home.
+    private static final String CLEAR_SCREEN = "\033[2J\033[H";
+
+    // saves and restores the cursor position.
+    private static final String SAVE_CURSOR = "\0337", RESTORE_CURSOR = "\0338";
+
+    private final ByteArrayOutputStream written = new ByteArrayOutputStream();
+
+    @Test
+    void firstFrameIsDrawnInFull() {
+        TerminalDiffRenderer renderer = new TerminalDiffRenderer(TERMINAL_ROWS, written);
+        renderer.out(frame("ab", "cd"));
+        assertEquals(CLEAR_SCREEN + fullRows("ab", "cd"), take());
+    }
+
+    @Test
+    void unchangedFrameWritesNothing() {
+        for (int terminalRows : new int[]{TERMINAL_ROWS, 0}) {
+            TerminalDiffRenderer renderer = new TerminalDiffRenderer(terminalRows, written);
+            renderer.out(frame("ab", "cd"));
+            take();
+            renderer.out(frame("ab", "cd"));
+            assertEquals("", take(), "terminal of " + terminalRows + " rows");
+        }
+    }
+
+    @Test
+    void onlyChangedCellsAreWritten() {
+        TerminalDiffRenderer renderer = new TerminalDiffRenderer(TERMINAL_ROWS, written);
+        renderer.out(frame("abcd", "efgh", "ijkl"));
+        take();
+        // a single cell, and a run of two cells, each written after a move to its screen position
+        renderer.out(frame("abcd", "eXgh", "iYZl"));
+        assertEquals(SAVE_CURSOR + "\033[2;3HX " + "\033[3;3HY Z " + RESTORE_CURSOR, take());
+        // the displayed frame follows the written cells
+        renderer.out(frame("abcd", "eXgh", "iYZl"));
+        assertEquals("", take());
+    }
+
+    @Test
+    void framesNotFittingTheTerminalAreRedrawnWhenChanged() {
+        TerminalDiffRenderer renderer = new TerminalDiffRenderer(0, written);
+        renderer.out(frame("ab", "cd"));
+        take();
+        renderer.out(frame("ab", "cX"));
+        assertEquals(CLEAR_SCREEN + fullRows("ab", "cX"), take());
+    }
+
+    @Test
+    void resetRedrawsTheNextFrame() {
+        TerminalDiffRenderer renderer = new TerminalDiffRenderer(TERMINAL_ROWS, written);
+        renderer.out(frame("ab", "cd"));
+        take();
+        renderer.reset();
+        renderer.out(frame("ab", "cd"));
+        assertEquals(CLEAR_SCREEN + fullRows("ab", "cd"), take());
+    }
+
+    private static char[][] frame(String... rows) {
+        char[][] chars = new char[rows.length][];
+        for (int y = 0; y < rows.length; y++) {
+            chars[y] = rows[y].toCharArray();
+        }
+        return chars;
+    }
+
+    private static String fullRows(String... rows) {
+        StringBuilder text = new StringBuilder();
+        for (String row : rows) {
+            for (char c : row.toCharArray()) {
+                text.append(c).append(' ');
+            }
+            text.append(System.lineSeparator());
+        }
+        return text.toString();
+    }
+
+    /**
+     * Returns the text written since the last call.
+     */
+    private String take() {
+        String text = written.toString(StandardCharsets.UTF_8);
+        written.reset();
+        return text;
+    }
+}
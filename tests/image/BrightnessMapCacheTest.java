@@ -0,0 +1,67 @@
+package image;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * Checks the LRU eviction, the memory accounting and the statistics of the brightness map cache.
+ */
+class BrightnessMapCacheTest {
+    // a map of one row of two tiles.
+    private static final double[][] MAP = {{0.25, 0.75}};
+
+    // weight of MAP: two doubles and the row overhead.
+    private static final long MAP_BYTES = 2 * Double.BYTES + 16;
+
+    @Test
+    void evictsLeastRecentlyUsedMap() {
+        BrightnessMapCache cache = new BrightnessMapCache(2 * MAP_BYTES);
+        double[][] a = MAP.clone();
+        double[][] b = MAP.clone();
+        double[][] c = MAP.clone();
+        cache.put(1, 2, a);
+        cache.put(2, 2, b);
+        assertSame(a, cache.get(1, 2));
+        cache.put(3, 2, c);
+        assertNull(cache.get(2, 2));
+        assertSame(a, cache.get(1, 2));
+        assertSame(c, cache.get(3, 2));
+        assertEquals(1, cache.getEvictions());
+        assertEquals(2 * MAP_BYTES, cache.getCurrentBytes());
+    }
+
+    @Test
+    void countsHitsAndMisses() {
+        BrightnessMapCache cache = new BrightnessMapCache();
+        assertNull(cache.get(1, 2));
+        cache.put(1, 2, MAP);
+        assertNotNull(cache.get(1, 2));
+        assertNull(cache.get(1, 4));
+        assertNull(cache.get(1, 2, 4));
+        assertEquals(1, cache.getHits());
+        assertEquals(3, cache.getMisses());
+        assertEquals(0, cache.getEvictions());
+    }
+
+    @Test
+    void replacingAMapKeepsItsWeightOnce() {
+        BrightnessMapCache cache = new BrightnessMapCache(2 * MAP_BYTES);
+        cache.put(1, 2, MAP);
+        cache.put(1, 2, MAP.clone());
+        assertEquals(MAP_BYTES, cache.getCurrentBytes());
+        assertEquals(0, cache.getEvictions());
+    }
+
+    @Test
+    void skipsMapsLargerThanTheBudget() {
+        BrightnessMapCache cache = new BrightnessMapCache(MAP_BYTES - 1);
+        cache.put(1, 2, MAP);
+        assertNull(cache.get(1, 2));
+        assertEquals(0, cache.getCurrentBytes());
+        assertEquals(0, cache.getEvictions());
+    }
+}
@@ -0,0 +1,84 @@
+package image;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+/**
+ * Checks that frames reusing the brightness of their unchanged tiles get the brightness maps of
+ * their images computed from scratch, and that decoding failures reach the consumer.
+ */
+class FrameSequenceTest {
+    // frame size.
+    private static final int WIDTH = 100, HEIGHT = 60;
+
+    // number of frames.
+    private static final int FRAMES = 5;
+
+    // a 1x1 GIF frame on a 65535x65535 logical screen, whose canvas cannot be allocated: the
+    // decoder fails with an unchecked exception.
+    private static final byte[] HUGE_CANVAS_GIF = {
+            'G', 'I', 'F', '8', '9', 'a', (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF,
+            (byte) 0x80, 0, 0, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0, 0, 0,
+            0x21, (byte) 0xF9, 0x04, 0x01, 0, 0, 0, 0,
+            0x2C, 0, 0, 0, 0, 0x01, 0, 0x01, 0, 0, 0x02, 0x02, 0x44, 0x01, 0, 0x3B};
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void frameDeltaMatchesFullComputation() throws Exception {
+        Path frames = Files.createDirectory(dir.resolve("frames"));
+        BufferedImage image = ImageIO.read(TestImages.write(dir, WIDTH, HEIGHT).toFile());
+        Path[] files = new Path[FRAMES];
+        for (int k = 0; k < FRAMES; k++) {
+            // every frame changes a small square of the previous one
+            for (int y = 10; y < 20; y++) {
+                for (int x = 10 * k; x < 10 * k + 10; x++) {
+                    image.setRGB(x, y, 0x102030 * k);
+                }
+            }
+            files[k] = TestImages.write(frames, "frame" + k, image);
+        }
+        for (int resolution : TestImages.resolutions(WIDTH, HEIGHT)) {
+            ImageManager imageManager = ImageManager.open(files[0].toString(), resolution,
+                    new BrightnessMapCache(0));
+            try (FrameSequence sequence = imageManager.openFrames(frames.toString())) {
+                for (Path file : files) {
+                    FrameSequence.Frame frame = sequence.next();
+                    ImageManager reference = TestImages.open(dir, file, resolution,
+                            manager -> manager.setFullFidelity(true));
+                    assertArrayEquals(reference.getBrightnessMap(), frame.getBrightnessMap(),
+                            file + " at " + resolution);
+                }
+                assertNull(sequence.next());
+            }
+        }
+    }
+
+    @Test
+    void decoderFailureReachesConsumer() throws Exception {
+        Path gif = Files.write(dir.resolve("huge.gif"), HUGE_CANVAS_GIF);
+        ImageManager imageManager = ImageManager.open(TestImages.write(dir, WIDTH, HEIGHT).toString(), 4,
+                new BrightnessMapCache(0));
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+            try (FrameSequence sequence = imageManager.openFrames(gif.toString())) {
+                IOException error = assertThrows(IOException.class, sequence::next);
+                assertInstanceOf(RuntimeException.class, error.getCause());
+                assertNull(sequence.next());
+            }
+        });
+    }
+}
@@ -0,0 +1,274 @@
+package image;
+
+import ascii_art.ResolutionExceedingBoundariesException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Checks that the alternate paths computing brightness and color maps give exactly the maps of
+ * their reference paths.
+ */
+class ImageManagerTest {
+    // image sizes, with and without padding, and with resolutions not dividing the padded width.
+    private static final int[][] SIZES = {{300, 200}, {200, 300}, {256, 256}, {1024, 1024}, {129, 65}};
+
+    // pyramid budget holding only the coarser resolutions of the larger images.
+    private static final long PARTIAL_PYRAMID_BYTES = 1 << 12;
+
+    // threads computing the parallel maps, more than one even on a single core.
+    private static final int PARALLELISM = 4;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void streamedMatchesInMemory() throws Exception {
+        for (int[] size : SIZES) {
+            Path file = TestImages.write(dir, size[0], size[1]);
+            for (int resolution : TestImages.resolutions(size[0], size[1])) {
+                for (boolean colors : new boolean[]{false, true}) {
+                    ImageManager inMemory = TestImages.open(dir, file, resolution, manager -> {
+                        manager.setFullFidelity(true);
+                        manager.setPyramidMaxBytes(0);
+                        manager.setColors(colors);
+                    });
+                    ImageManager streamed = TestImages.open(dir, file, resolution, manager -> {
+                        manager.setFullFidelity(true);
+                        manager.setStreamingThreshold(0);
+                        manager.setColors(colors);
+                    });
+                    String message = size[0] + "x" + size[1] + " at " + resolution;
+                    assertArrayEquals(inMemory.getBrightnessMap(), streamed.getBrightnessMap(), message);
+                    assertArrayEquals(inMemory.getColorMap(), streamed.getColorMap(), message);
+                }
+            }
+        }
+    }
+
+    @Test
+    void pyramidMatchesDirectComputation() throws Exception {
+        for (int[] size : SIZES) {
+            Path file = TestImages.write(dir, size[0], size[1]);
+            int[] resolutions = TestImages.resolutions(size[0], size[1]);
+            // a whole pyramid, and one leaving out its finest resolutions
+            for (long budget : new long[]{Long.MAX_VALUE, PARTIAL_PYRAMID_BYTES}) {
+                ImageManager pyramid = TestImages.open(dir, file, resolutions[0], manager -> {
+                    manager.setFullFidelity(true);
+                    manager.setPyramidMaxBytes(budget);
+                    manager.setEagerPyramid(true);
+                });
+                for (int resolution : resolutions) {
+                    pyramid.setResolution(resolution);
+                    ImageManager direct = TestImages.open(dir, file, resolution, manager -> {
+                        manager.setFullFidelity(true);
+                        manager.setPyramidMaxBytes(0);
+                    });
+                    assertArrayEquals(direct.getBrightnessMap(), pyramid.getBrightnessMap(),
+                            size[0] + "x" + size[1] + " at " + resolution + " with a budget of " + budget);
+                }
+            }
+        }
+    }
+
+    @Test
+    void virtualPaddingMatchesPaddedImage() throws Exception {
+        for (int[] size : SIZES) {
+            Path file = TestImages.write(dir, size[0], size[1]);
+            BufferedImage image = ImageIO.read(file.toFile());
+            int paddedWidth = ImageManager.paddedSize(size[0]);
+            int paddedHeight = ImageManager.paddedSize(size[1]);
+            BufferedImage padded = new BufferedImage(paddedWidth, paddedHeight, BufferedImage.TYPE_INT_RGB);
+            Graphics2D graphics = padded.createGraphics();
+            graphics.setColor(Color.WHITE);
+            graphics.fillRect(0, 0, paddedWidth, paddedHeight);
+            graphics.drawImage(image, (paddedWidth - size[0]) / 2, (paddedHeight - size[1]) / 2, null);
+            graphics.dispose();
+            Path paddedFile = TestImages.write(dir, "padded_" + size[0] + "x" + size[1], padded);
+            for (boolean colors : new boolean[]{false, true}) {
+                Consumer<ImageManager> inMemory = manager -> {
+                    manager.setFullFidelity(true);
+                    manager.setPyramidMaxBytes(0);
+                    manager.setColors(colors);
+                };
+                for (int resolution : TestImages.resolutions(size[0], size[1])) {
+                    ImageManager virtual = TestImages.open(dir, file, resolution, inMemory);
+                    ImageManager materialized = TestImages.open(dir, paddedFile, resolution, inMemory);
+                    String message = size[0] + "x" + size[1] + " at " + resolution + (colors ? " with colors" : "");
+                    assertArrayEquals(materialized.getBrightnessMap(), virtual.getBrightnessMap(), message);
+                    assertArrayEquals(materialized.getColorMap(), virtual.getColorMap(), message);
+                }
+            }
+        }
+    }
+
+    @Test
+    void parallelMatchesSequential() throws Exception {
+        for (int[] size : SIZES) {
+            Path file = TestImages.write(dir, size[0], size[1]);
+            for (int resolution : TestImages.resolutions(size[0], size[1])) {
+                for (boolean colors : new boolean[]{false, true}) {
+                    for (long streamingThreshold : new long[]{ImageManager.DEFAULT_STREAMING_THRESHOLD, 0}) {
+                        Consumer<ImageManager> configuration = manager -> {
+                            manager.setPyramidMaxBytes(0);
+                            manager.setStreamingThreshold(streamingThreshold);
+                            manager.setColors(colors);
+                        };
+                        ImageManager sequential = TestImages.open(dir, file, resolution, configuration);
+                        ImageManager parallel = TestImages.open(dir, file, resolution,
+                                configuration.andThen(manager -> manager.setParallelism(PARALLELISM)));
+                        String message = size[0] + "x" + size[1] + " at " + resolution +
+                                (colors ? " with colors" : "") + (streamingThreshold == 0 ? " streamed" : "");
+                        assertArrayEquals(sequential.getBrightnessMap(), parallel.getBrightnessMap(), message);
+                        assertArrayEquals(sequential.getColorMap(), parallel.getColorMap(), message);
+                        parallel.setParallelism(1);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void colorMapAveragesTileColors() throws Exception {
+        // tiles of 16x16 pixels at resolution 4: solid tiles, and a tile of two colors side by side
+        int[][] tileColors = {{0xC80000, 0x00C800, 0x0000C8, 0xFFFFFF}, {0x000000, 0x102030, -1, 0x808080}};
+        BufferedImage image = new BufferedImage(64, 32, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                int color = tileColors[y / 16][x / 16];
+                image.setRGB(x, y, color != -1 ? color : x % 16 < 8 ? 0xC80000 : 0x000064);
+            }
+        }
+        Path file = TestImages.write(dir, "tiles", image);
+        int[][] expected = {{0xC80000, 0x00C800, 0x0000C8, 0xFFFFFF}, {0x000000, 0x102030, 0x640032, 0x808080}};
+        for (boolean colors : new boolean[]{false, true}) {
+            ImageManager manager = TestImages.open(dir, file, 4, m -> m.setColors(colors));
+            assertArrayEquals(expected, manager.getColorMap(), colors ? "with colors" : "computed on demand");
+        }
+    }
+
+    @Test
+    void colorMapBlendsPaddingAsWhite() throws Exception {
+        // a black 48x32 image, padded by 8 white columns on each side, in tiles of 16x16 pixels
+        BufferedImage image = new BufferedImage(48, 32, BufferedImage.TYPE_INT_RGB);
+        Path file = TestImages.write(dir, "black", image);
+        ImageManager manager = TestImages.open(dir, file, 4, m -> m.setColors(true));
+        int[] row = {0x808080, 0x000000, 0x000000, 0x808080};
+        assertArrayEquals(new int[][]{row, row}, manager.getColorMap());
+    }
+
+    @Test
+    void subsampledHashesAreNotSharedAcrossFiles() throws Exception {
+        // at resolution 2, tiles of 256 pixels are decoded with a subsampling factor of 16
+        int subsampling = 16;
+        Path original = TestImages.write(dir, 512, 256);
+        BufferedImage image = ImageIO.read(original.toFile());
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                if (x % subsampling != 0 || y % subsampling != 0) {
+                    image.setRGB(x, y, 0);
+                }
+            }
+        }
+        Path sameSamples = TestImages.write(dir, "same_samples", image);
+        BrightnessMapCache cache = new BrightnessMapCache();
+        ImageManager shared = TestImages.open(dir, original, 2, cache, manager -> manager.setFullFidelity(false));
+        // caches the full-fidelity map of the original under the hash of its subsampled load
+        shared.setFullFidelity(true);
+        shared.setResolution(2);
+        shared.setFullFidelity(false);
+        shared.setImage(sameSamples.toString());
+        shared.setFullFidelity(true);
+        shared.setResolution(2);
+        ImageManager reference = TestImages.open(dir, sameSamples, 2, manager -> { });
+        assertArrayEquals(reference.getBrightnessMap(), shared.getBrightnessMap());
+    }
+
+    @Test
+    void subsampledMapsAreSharedAcrossCopies() throws Exception {
+        Path original = TestImages.write(dir, 512, 256);
+        Path copy = Files.copy(original, dir.resolve("copy.png"));
+        BrightnessMapCache cache = new BrightnessMapCache();
+        ImageManager first = TestImages.open(dir, original, 2, cache, manager -> manager.setFullFidelity(false));
+        long misses = cache.getMisses();
+        ImageManager second = TestImages.open(dir, copy, 2, cache, manager -> manager.setFullFidelity(false));
+        // the copy is known by the content of the original, and answered from its map
+        assertEquals(cache.getImageInfo(original.toFile()).contentHash, cache.getImageInfo(copy.toFile()).contentHash);
+        assertEquals(misses, cache.getMisses());
+        assertArrayEquals(first.getBrightnessMap(), second.getBrightnessMap());
+    }
+
+    @Test
+    void fullFidelityIsTheDefault() throws Exception {
+        Path file = TestImages.write(dir, 512, 256);
+        ImageManager subsampled = TestImages.open(dir, file, 2, manager -> manager.setFullFidelity(false));
+        ImageManager fullFidelity = TestImages.open(dir, file, 2, manager -> manager.setFullFidelity(true));
+        ImageManager byDefault = ImageManager.open(file.toString(), 2, new BrightnessMapCache(0));
+        assertArrayEquals(fullFidelity.getBrightnessMap(), byDefault.getBrightnessMap());
+        assertFalse(Arrays.deepEquals(subsampled.getBrightnessMap(), byDefault.getBrightnessMap()));
+    }
+
+    @Test
+    void failedImageChangeKeepsPreviousImage() throws Exception {
+        Path original = TestImages.write(dir, 256, 256);
+        Path small = TestImages.write(dir, 16, 16);
+        Path corrupt = Files.write(dir.resolve("corrupt.png"), new byte[]{(byte) 0x89, 'P', 'N', 'G'});
+        ImageManager manager = ImageManager.open(original.toString(), 128, new BrightnessMapCache(0));
+        double[][] brightnessMap = manager.getBrightnessMap();
+        long version = manager.getVersion();
+        assertThrows(ResolutionExceedingBoundariesException.class, () -> manager.setImage(small.toString()));
+        assertThrows(IOException.class, () -> manager.setImage(corrupt.toString()));
+        assertArrayEquals(brightnessMap, manager.getBrightnessMap());
+        assertEquals(version, manager.getVersion());
+        manager.setResolution(64);
+        ImageManager reference = ImageManager.open(original.toString(), 64, new BrightnessMapCache(0));
+        assertArrayEquals(reference.getBrightnessMap(), manager.getBrightnessMap());
+    }
+
+    @Test
+    void deletedFileFailsResolutionChangeCleanly() throws Exception {
+        Path file = TestImages.write(dir, 256, 256);
+        // streamed, so every uncached resolution reads the file again
+        ImageManager manager = TestImages.open(dir, file, 16, m -> m.setStreamingThreshold(0));
+        double[][] brightnessMap = manager.getBrightnessMap();
+        long version = manager.getVersion();
+        Files.delete(file);
+        assertThrows(UncheckedIOException.class, () -> manager.setResolution(32));
+        assertEquals(16, manager.getResolution());
+        assertEquals(version, manager.getVersion());
+        assertArrayEquals(brightnessMap, manager.getBrightnessMap());
+    }
+
+    @Test
+    void changedFileIsNotCachedUnderTheLoadedContent() throws Exception {
+        Path file = TestImages.write(dir, 256, 256);
+        Path copy = Files.copy(file, dir.resolve("copy.png"));
+        BrightnessMapCache cache = new BrightnessMapCache();
+        ImageManager.open(copy.toString(), 16, cache);
+        ImageManager manager = ImageManager.open(file.toString(), 16, cache);
+        // the copy is known to the cache, so it is not decoded again
+        manager.setImage(copy.toString());
+        Files.copy(TestImages.write(dir, 64, 32), copy, StandardCopyOption.REPLACE_EXISTING);
+        assertThrows(UncheckedIOException.class, () -> manager.setResolution(32));
+        assertEquals(16, manager.getResolution());
+        ImageManager reference = TestImages.open(dir, file, 32, m -> m.setFullFidelity(true));
+        ImageManager cached = ImageManager.open(file.toString(), 32, cache);
+        assertArrayEquals(reference.getBrightnessMap(), cached.getBrightnessMap());
+    }
+}
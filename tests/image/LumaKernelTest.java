@@ -0,0 +1,55 @@
+package image;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Checks that the vector luma kernel gives exactly the results of the scalar kernel.
+ */
+class LumaKernelTest {
+    // number of pixels, spanning several flushes of the vector lanes.
+    private static final int PIXELS = 5000;
+
+    // run lengths, shorter than a vector, around the flush size, and not multiples of any lane count.
+    private static final int[] LENGTHS = {0, 1, 3, 7, 31, 511, 512, 513, 1023, 4097, PIXELS};
+
+    // offsets of the runs, aligned and not.
+    private static final int[] OFFSETS = {0, 1, 5, 17};
+
+    // seed of the pixels.
+    private static final long SEED = 3;
+
+    @Test
+    void vectorMatchesScalar() {
+        assumeTrue(ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent(),
+                "jdk.incubator.vector is not available");
+        LumaKernel scalar = new LumaKernel();
+        LumaKernel vector = new VectorLumaKernel();
+        Random random = new Random(SEED);
+        int[] randomPixels = random.ints(PIXELS + OFFSETS[OFFSETS.length - 1]).toArray();
+        int[] white = new int[randomPixels.length];
+        Arrays.fill(white, 0xFFFFFFFF);
+        int[] black = new int[randomPixels.length];
+        Arrays.fill(black, 0xFF000000);
+        for (int[] pixels : new int[][]{randomPixels, white, black}) {
+            for (int offset : OFFSETS) {
+                for (int length : LENGTHS) {
+                    String message = "offset " + offset + ", length " + length;
+                    assertEquals(scalar.sum(pixels, offset, offset + length),
+                            vector.sum(pixels, offset, offset + length), message);
+                    int[] expected = new int[length + 2];
+                    int[] actual = new int[length + 2];
+                    scalar.luma(pixels, offset, offset + length, expected, 1);
+                    vector.luma(pixels, offset, offset + length, actual, 1);
+                    assertArrayEquals(expected, actual, message);
+                }
+            }
+        }
+    }
+}
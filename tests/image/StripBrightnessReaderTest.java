@@ -0,0 +1,32 @@
+package image;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that streamed images are read in few strips, since every strip decodes the image from its
+ * start.
+ */
+class StripBrightnessReaderTest {
+    // sampled widths and heights, from a single small strip to images far above the strip size.
+    private static final int[] SIZES = {1, 7, 1000, 4096, 65536, 1 << 20};
+
+    @Test
+    void stripCountStaysBounded() {
+        for (int sampledWidth : SIZES) {
+            for (int sampledHeight : SIZES) {
+                int stripRows = StripBrightnessReader.sampledStripRows(sampledWidth, sampledHeight);
+                int strips = TileSums.ceilDiv(sampledHeight, stripRows);
+                String message = sampledWidth + "x" + sampledHeight;
+                assertTrue(strips <= StripBrightnessReader.MAX_STRIPS, message);
+                // strips only grow beyond their usual size when there would be too many of them
+                int usualRows = Math.max(1, StripBrightnessReader.STRIP_PIXELS / sampledWidth);
+                if (TileSums.ceilDiv(sampledHeight, usualRows) <= StripBrightnessReader.MAX_STRIPS) {
+                    assertEquals(usualRows, stripRows, message);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package image;
+
+import ascii_art.ResolutionExceedingBoundariesException;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+
+/**
+ * Deterministic test images, and image managers configured before their image is loaded.
+ */
+final class TestImages {
+    // seed of the pixels.
+    private static final long SEED = 7;
+
+    /**
+     * Private constructor, the class only has static methods.
+     */
+    private TestImages() {
+    }
+
+    /**
+     * Writes a PNG of random pixels over a horizontal gradient, so tiles get a spread of brightness
+     * values and colors.
+     *
+     * @param dir    the directory of the file
+     * @param width  the width of the image
+     * @param height the height of the image
+     * @return the path of the file
+     * @throws IOException if the file cannot be written
+     */
+    static Path write(Path dir, int width, int height) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Random random = new Random(SEED);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int gradient = x * 0xFF / width;
+                image.setRGB(x, y, random.nextInt(0x1000000) & 0x7F7F7F | gradient << 16 | gradient >> 1);
+            }
+        }
+        return write(dir, width + "x" + height, image);
+    }
+
+    /**
+     * Writes an image to a PNG file.
+     *
+     * @param dir   the directory of the file
+     * @param name  the name of the file, without extension
+     * @param image the image
+     * @return the path of the file
+     * @throws IOException if the file cannot be written
+     */
+    static Path write(Path dir, String name, BufferedImage image) throws IOException {
+        Path file = dir.resolve(name + ".png");
+        ImageIO.write(image, "png", file.toFile());
+        return file;
+    }
+
+    /**
+     * Opens an image at a resolution with a manager configured beforehand, since most settings only
+     * take effect from the next image set. The manager has no brightness map cache, so every map is
+     * computed by the configured path.
+     *
+     * @param dir           a directory to write a placeholder image of the same size to
+     * @param file          the image file
+     * @param resolution    the resolution
+     * @param configuration the configuration of the manager
+     * @return the image manager
+     * @throws IOException                            if an image cannot be read
+     * @throws ResolutionExceedingBoundariesException if the resolution is invalid for the image
+     */
+    static ImageManager open(Path dir, Path file, int resolution, Consumer<ImageManager> configuration)
+            throws IOException, ResolutionExceedingBoundariesException {
+        return open(dir, file, resolution, new BrightnessMapCache(0), configuration);
+    }
+
+    /**
+     * Opens an image at a resolution with a manager configured beforehand, sharing a brightness
+     * map cache.
+     *
+     * @param dir           a directory to write a placeholder image of the same size to
+     * @param file          the image file
+     * @param resolution    the resolution
+     * @param cache         the brightness map cache of the manager
+     * @param configuration the configuration of the manager
+     * @return the image manager
+     * @throws IOException                            if an image cannot be read
+     * @throws ResolutionExceedingBoundariesException if the resolution is invalid for the image
+     */
+    static ImageManager open(Path dir, Path file, int resolution, BrightnessMapCache cache,
+                             Consumer<ImageManager> configuration)
+            throws IOException, ResolutionExceedingBoundariesException {
+        BufferedImage image = ImageIO.read(file.toFile());
+        Path placeholder = write(dir, "placeholder",
+                new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB));
+        ImageManager manager = new ImageManager(placeholder.toString(), resolution, cache);
+        configuration.accept(manager);
+        manager.setImage(file.toString());
+        return manager;
+    }
+
+    /**
+     * Lists the resolutions valid for an image, including those not dividing its padded width.
+     *
+     * @param width  the width of the image
+     * @param height the height of the image
+     * @return the valid resolutions among a fixed set of candidates
+     */
+    static int[] resolutions(int width, int height) {
+        return IntStream.of(1, 2, 3, 4, 7, 16, 64, 100, 128, 255, 256)
+                .filter(resolution -> {
+                    try {
+                        ImageManager.checkResolution(resolution, ImageManager.paddedSize(width),
+                                ImageManager.paddedSize(height));
+                        return true;
+                    } catch (ResolutionExceedingBoundariesException e) {
+                        return false;
+                    }
+                })
+                .toArray();
+    }
+}
@@ -0,0 +1,86 @@
+package image_char_matching;
+
+import org.junit.jupiter.api.Test;
+
+import java.awt.Font;
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Checks that glyphs rendered through pooled scratch images are exactly the glyphs of a fresh image
+ * per character.
+ */
+class CharConverterTest {
+    // first and last printable ASCII characters.
+    private static final char FIRST_CHAR = 32, LAST_CHAR = 126;
+
+    // pixel resolutions, including one different from the default.
+    private static final int[] PIXEL_RESOLUTIONS = {CharConverter.DEFAULT_PIXEL_RESOLUTION, 7};
+
+    // rounds of parallel renders, many more renders than idle scratch images.
+    private static final int PARALLEL_ROUNDS = 8;
+
+    @Test
+    void glyphsMatchFreshRendering() {
+        char[] chars = printableAscii();
+        for (int pixelResolution : PIXEL_RESOLUTIONS) {
+            CharConverter converter = new CharConverter(CharConverter.DEFAULT_FONT_NAME, pixelResolution);
+            for (char c : chars) {
+                boolean[][] expected = renderFresh(c, pixelResolution);
+                assertArrayEquals(expected, converter.convert(c), "'" + c + "' at " + pixelResolution);
+                assertEquals(countTrue(expected), converter.countWhitePixels(c), "'" + c + "' at " + pixelResolution);
+            }
+            for (int round = 0; round < PARALLEL_ROUNDS; round++) {
+                boolean[][][] matrices = converter.convertAll(chars);
+                int[] counts = converter.countWhitePixels(chars);
+                for (int i = 0; i < chars.length; i++) {
+                    boolean[][] expected = renderFresh(chars[i], pixelResolution);
+                    assertArrayEquals(expected, matrices[i], "'" + chars[i] + "' at " + pixelResolution);
+                    assertEquals(countTrue(expected), counts[i], "'" + chars[i] + "' at " + pixelResolution);
+                }
+            }
+        }
+    }
+
+    /**
+     * Renders a character into a new image, as the converter first did.
+     */
+    private static boolean[][] renderFresh(char c, int pixelResolution) {
+        BufferedImage img = new BufferedImage(pixelResolution, pixelResolution, BufferedImage.TYPE_INT_ARGB);
+        Graphics g = img.getGraphics();
+        g.setFont(new Font(CharConverter.DEFAULT_FONT_NAME, Font.PLAIN, pixelResolution));
+        g.drawString(Character.toString(c), (int) Math.round(pixelResolution * 0.2),
+                (int) Math.round(pixelResolution * 0.75));
+        g.dispose();
+        boolean[][] matrix = new boolean[pixelResolution][pixelResolution];
+        for (int y = 0; y < pixelResolution; y++) {
+            for (int x = 0; x < pixelResolution; x++) {
+                matrix[y][x] = img.getRGB(x, y) == 0;
+            }
+        }
+        return matrix;
+    }
+
+    private static int countTrue(boolean[][] matrix) {
+        int count = 0;
+        for (boolean[] row : matrix) {
+            for (boolean pixel : row) {
+                if (pixel) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    private static char[] printableAscii() {
+        char[] chars = new char[LAST_CHAR - FIRST_CHAR + 1];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = (char) (FIRST_CHAR + i);
+        }
+        return chars;
+    }
+}
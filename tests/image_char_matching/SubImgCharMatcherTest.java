@@ -0,0 +1,92 @@
+package image_char_matching;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Checks that the brightness lookup table chooses exactly the characters of the exact search.
+ */
+class SubImgCharMatcherTest {
+    // charsets: printable ASCII, a few characters, and characters of equal brightness.
+    private static final String[] CHARSETS = {printableAscii(), "@#o.", " .", "ilI|"};
+
+    // bucket counts of the lookup table, from a single bucket to more than the default.
+    private static final int[] BUCKETS = {1, 16, SubImgCharMatcher.DEFAULT_LOOKUP_TABLE_BUCKETS, 1 << 16};
+
+    // number of evenly spaced brightness values checked.
+    private static final int STEPS = 1 << 18;
+
+    // number of random brightness values checked.
+    private static final int RANDOM_VALUES = 1 << 16;
+
+    // seed of the random brightness values.
+    private static final long SEED = 5;
+
+    @Test
+    void lookupTableMatchesExactSearch() {
+        for (String charset : CHARSETS) {
+            SubImgCharMatcher exact = new SubImgCharMatcher(charset.toCharArray());
+            exact.setLookupTableBuckets(0);
+            for (int buckets : BUCKETS) {
+                SubImgCharMatcher table = new SubImgCharMatcher(charset.toCharArray());
+                table.setLookupTableBuckets(buckets);
+                assertMatches(exact, table, buckets, charset);
+            }
+        }
+    }
+
+    @Test
+    void lookupTableFollowsCharsetChanges() {
+        SubImgCharMatcher exact = new SubImgCharMatcher("@#o.".toCharArray());
+        exact.setLookupTableBuckets(0);
+        SubImgCharMatcher table = new SubImgCharMatcher("@#o.".toCharArray());
+        table.getCharByImageBrightness(0.5);
+        for (SubImgCharMatcher matcher : new SubImgCharMatcher[]{exact, table}) {
+            matcher.addChar('x');
+            matcher.removeChar('@');
+        }
+        assertMatches(exact, table, SubImgCharMatcher.DEFAULT_LOOKUP_TABLE_BUCKETS, "#o.x");
+    }
+
+    /**
+     * Asserts that two matchers choose the same characters over evenly spaced and random
+     * brightness values, the bucket bounds and their neighbours, and values out of [0, 1].
+     */
+    private static void assertMatches(SubImgCharMatcher exact, SubImgCharMatcher table, int buckets,
+                                      String charset) {
+        String message = charset + " with " + buckets + " buckets";
+        for (int i = 0; i <= STEPS; i++) {
+            assertMatch(exact, table, (double) i / STEPS, message);
+        }
+        for (int i = 0; i <= buckets; i++) {
+            double bound = (double) i / buckets;
+            assertMatch(exact, table, Math.nextDown(bound), message);
+            assertMatch(exact, table, bound, message);
+            assertMatch(exact, table, Math.nextUp(bound), message);
+        }
+        Random random = new Random(SEED);
+        for (int i = 0; i < RANDOM_VALUES; i++) {
+            assertMatch(exact, table, random.nextDouble(), message);
+        }
+        for (double brightness : new double[]{-1, -Double.MIN_VALUE, 1.5, Double.MAX_VALUE}) {
+            assertMatch(exact, table, brightness, message);
+        }
+    }
+
+    private static void assertMatch(SubImgCharMatcher exact, SubImgCharMatcher table, double brightness,
+                                    String message) {
+        assertEquals(exact.getCharByImageBrightness(brightness), table.getCharByImageBrightness(brightness),
+                () -> message + " at brightness " + brightness);
+    }
+
+    private static String printableAscii() {
+        StringBuilder chars = new StringBuilder();
+        for (char c = ' '; c <= '~'; c++) {
+            chars.append(c);
+        }
+        return chars.toString();
+    }
+}
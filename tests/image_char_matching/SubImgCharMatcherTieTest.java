@@ -0,0 +1,124 @@
+package image_char_matching;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Checks that the binary search breaks ties like the linear scan it replaced: the closest normalized
+ * brightness wins, then the lower brightness, then the lower char code.
+ */
+class SubImgCharMatcherTieTest {
+    // blank characters: a space, a no-break space, a figure space and an en space, all equally bright.
+    private static final String BLANKS = " \u00A0\u2007\u2002";
+
+    // charsets: printable ASCII, a few characters of which 'l' and 'I' are equally bright, and blanks.
+    private static final String[] CHARSETS = {printableAscii(), "ilI|@#o.", BLANKS};
+
+    // bucket counts of the matchers checked, 0 for the binary search alone.
+    private static final int[] BUCKETS = {0, SubImgCharMatcher.DEFAULT_LOOKUP_TABLE_BUCKETS};
+
+    @Test
+    void searchBreaksTiesLikeLinearScan() {
+        for (String charset : CHARSETS) {
+            char[] chars = charset.toCharArray();
+            double[] brightness = GlyphBrightnessCache.getShared().getBrightness(CharConverter.getDefault(), chars);
+            for (int buckets : BUCKETS) {
+                SubImgCharMatcher matcher = new SubImgCharMatcher(chars);
+                matcher.setLookupTableBuckets(buckets);
+                for (double value : tieBrightnessValues(brightness)) {
+                    assertEquals(linearScan(chars, brightness, value), matcher.getCharByImageBrightness(value),
+                            () -> charset + " with " + buckets + " buckets at brightness " + value);
+                }
+            }
+        }
+    }
+
+    @Test
+    void equallyBrightCharactersChooseLowestCharCode() {
+        char[] chars = new StringBuilder(BLANKS).reverse().toString().toCharArray();
+        double[] brightness = GlyphBrightnessCache.getShared().getBrightness(CharConverter.getDefault(), chars);
+        for (double b : brightness) {
+            assertEquals(brightness[0], b, "blank characters should be equally bright");
+        }
+        for (int buckets : BUCKETS) {
+            SubImgCharMatcher matcher = new SubImgCharMatcher(chars);
+            matcher.setLookupTableBuckets(buckets);
+            for (double value : new double[]{-1, 0, 0.5, 1, 2}) {
+                assertEquals(' ', matcher.getCharByImageBrightness(value),
+                        () -> buckets + " buckets at brightness " + value);
+            }
+        }
+    }
+
+    /**
+     * Lists the brightness values where ties can happen: the normalized brightness of every character,
+     * the midpoint of every two of them, and the neighbours of both, plus values out of [0, 1].
+     */
+    private static List<Double> tieBrightnessValues(double[] brightness) {
+        TreeSet<Double> levels = new TreeSet<>();
+        for (double b : brightness) {
+            levels.add(normalize(brightness, b));
+        }
+        List<Double> values = new ArrayList<>(List.of(-1.0, 2.0));
+        for (double level : levels) {
+            for (double other : levels) {
+                double midpoint = (level + other) / 2;
+                values.add(Math.nextDown(midpoint));
+                values.add(midpoint);
+                values.add(Math.nextUp(midpoint));
+            }
+        }
+        return values;
+    }
+
+    /**
+     * The linear scan of the original matcher: the character whose normalized brightness is the
+     * closest wins, ties going to the lower brightness, then to the lower char code. When every
+     * character is equally bright the original divided zero by zero and kept whichever character
+     * its hash map listed first; the scan here treats them all as equally close instead.
+     */
+    private static char linearScan(char[] chars, double[] brightness, double value) {
+        int found = -1;
+        double foundDiff = 0;
+        double foundNormalized = 0;
+        for (int i = 0; i < chars.length; i++) {
+            double normalized = normalize(brightness, brightness[i]);
+            double diff = Math.abs(normalized - value);
+            if (found < 0 || diff < foundDiff ||
+                    diff == foundDiff && (normalized < foundNormalized ||
+                            normalized == foundNormalized && chars[i] < chars[found])) {
+                found = i;
+                foundDiff = diff;
+                foundNormalized = normalized;
+            }
+        }
+        return chars[found];
+    }
+
+    /**
+     * Normalizes a brightness into [0, 1] over the range of a charset, like the matcher; an empty
+     * range normalizes to 0.
+     */
+    private static double normalize(double[] brightness, double b) {
+        double min = Double.MAX_VALUE;
+        double max = -Double.MAX_VALUE;
+        for (double other : brightness) {
+            min = Math.min(min, other);
+            max = Math.max(max, other);
+        }
+        return max == min ? 0 : (b - min) / (max - min);
+    }
+
+    private static String printableAscii() {
+        StringBuilder chars = new StringBuilder();
+        for (char c = ' '; c <= '~'; c++) {
+            chars.append(c);
+        }
+        return chars.toString();
+    }
+}